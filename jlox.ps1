@@ -1,2 +1,2 @@
-javac -d ./build/java ./jlox/com/craftinginterpreters/lox/Lox.java ./jlox/com/craftinginterpreters/lox/Token.java ./jlox/com/craftinginterpreters/lox/TokenType.java ./jlox/com/craftinginterpreters/lox/Scanner.java ./jlox/com/craftinginterpreters/lox/Interpreter.java ./jlox/com/craftinginterpreters/lox/RuntimeError.java ./jlox/com/craftinginterpreters/lox/Expr.java ./jlox/com/craftinginterpreters/lox/Environment.java ./jlox/com/craftinginterpreters/lox/Stmt.java ./jlox/com/craftinginterpreters/lox/Parser.java ./jlox/com/craftinginterpreters/lox/LoxFunction.java ./jlox/com/craftinginterpreters/lox/LoxCallable.java ./jlox/com/craftinginterpreters/lox/Return.java ./jlox/com/craftinginterpreters/lox/Resolver.java ./jlox/com/craftinginterpreters/lox/LoxClass.java ./jlox/com/craftinginterpreters/lox/LoxInstance.java
+javac -d ./build/java ./jlox/com/craftinginterpreters/lox/Lox.java ./jlox/com/craftinginterpreters/lox/Token.java ./jlox/com/craftinginterpreters/lox/TokenType.java ./jlox/com/craftinginterpreters/lox/Scanner.java ./jlox/com/craftinginterpreters/lox/Interpreter.java ./jlox/com/craftinginterpreters/lox/RuntimeError.java ./jlox/com/craftinginterpreters/lox/Expr.java ./jlox/com/craftinginterpreters/lox/Environment.java ./jlox/com/craftinginterpreters/lox/Stmt.java ./jlox/com/craftinginterpreters/lox/Parser.java ./jlox/com/craftinginterpreters/lox/LoxFunction.java ./jlox/com/craftinginterpreters/lox/LoxCallable.java ./jlox/com/craftinginterpreters/lox/Return.java ./jlox/com/craftinginterpreters/lox/Resolver.java ./jlox/com/craftinginterpreters/lox/LoxClass.java ./jlox/com/craftinginterpreters/lox/LoxInstance.java ./jlox/com/craftinginterpreters/lox/AstRewriter.java ./jlox/com/craftinginterpreters/lox/Superinstructions.java ./jlox/com/craftinginterpreters/lox/LoopOptimization.java ./jlox/com/craftinginterpreters/lox/TypeInference.java ./jlox/com/craftinginterpreters/lox/Purity.java ./jlox/com/craftinginterpreters/lox/TreeShaking.java ./jlox/com/craftinginterpreters/lox/LazyBody.java ./jlox/com/craftinginterpreters/lox/Rope.java ./jlox/com/craftinginterpreters/lox/Interner.java ./jlox/com/craftinginterpreters/lox/NumberFormatter.java ./jlox/com/craftinginterpreters/lox/OutputSink.java ./jlox/com/craftinginterpreters/lox/ByteScanner.java ./jlox/com/craftinginterpreters/lox/ParallelParser.java ./jlox/com/craftinginterpreters/lox/TokenSource.java ./jlox/com/craftinginterpreters/lox/CompactAst.java ./jlox/com/craftinginterpreters/lox/CompactProgram.java ./jlox/com/craftinginterpreters/lox/ProgramCache.java ./jlox/com/craftinginterpreters/lox/Diagnostic.java ./jlox/com/craftinginterpreters/lox/Recognizer.java ./jlox/com/craftinginterpreters/lox/IncrementalParser.java ./jlox/com/craftinginterpreters/lox/CallSite.java ./jlox/com/craftinginterpreters/lox/Inliner.java ./jlox/com/craftinginterpreters/lox/Profile.java ./jlox/com/craftinginterpreters/lox/Pass.java ./jlox/com/craftinginterpreters/lox/Optimizer.java ./jlox/com/craftinginterpreters/lox/GroupingElimination.java ./jlox/com/craftinginterpreters/lox/ConstantFolding.java ./jlox/com/craftinginterpreters/lox/DeadCodeElimination.java
 java -cp ./build/java com.craftinginterpreters.lox.Lox temp.txt
\ No newline at end of file
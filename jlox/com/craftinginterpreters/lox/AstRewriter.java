@@ -0,0 +1,308 @@
+// AstRewriter.java
+// Base class for passes that transform the resolved syntax tree.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+abstract class AstRewriter implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  /**
+   * Rewrite each statement in a list.
+   * The same list is returned when nothing changed.
+   * 
+   * @param statements
+   * @return
+   */
+  List<Stmt> rewrite(List<Stmt> statements) {
+    List<Stmt> result = null;
+    for (int i = 0; i < statements.size(); i++) {
+      Stmt statement = statements.get(i);
+      Stmt rewritten = rewrite(statement);
+      if (rewritten != statement && result == null) {
+        result = new ArrayList<>(statements.subList(0, i));
+      }
+      if (result != null) {
+        result.add(rewritten);
+      }
+    }
+
+    return result == null ? statements : result;
+  }
+
+  /**
+   * Rewrite a single statement.
+   * 
+   * @param stmt
+   * @return
+   */
+  Stmt rewrite(Stmt stmt) {
+    if (stmt == null)
+      return null;
+    return stmt.accept(this);
+  }
+
+  /**
+   * Rewrite a single expression.
+   * 
+   * @param expr
+   * @return
+   */
+  Expr rewrite(Expr expr) {
+    if (expr == null)
+      return null;
+    return expr.accept(this);
+  }
+
+  /**
+   * Rewrite each expression in a list.
+   * The same list is returned when nothing changed.
+   * 
+   * @param exprs
+   * @return
+   */
+  List<Expr> rewriteAll(List<Expr> exprs) {
+    List<Expr> result = null;
+    for (int i = 0; i < exprs.size(); i++) {
+      Expr expr = exprs.get(i);
+      Expr rewritten = rewrite(expr);
+      if (rewritten != expr && result == null) {
+        result = new ArrayList<>(exprs.subList(0, i));
+      }
+      if (result != null) {
+        result.add(rewritten);
+      }
+    }
+
+    return result == null ? exprs : result;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    List<Stmt> statements = rewrite(stmt.statements);
+    if (statements == stmt.statements)
+      return stmt;
+    return new Stmt.Block(statements);
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    List<Stmt.Function> methods = null;
+    for (int i = 0; i < stmt.methods.size(); i++) {
+      Stmt.Function method = stmt.methods.get(i);
+      Stmt.Function rewritten = (Stmt.Function) rewrite(method);
+      if (rewritten != method && methods == null) {
+        methods = new ArrayList<>(stmt.methods.subList(0, i));
+      }
+      if (methods != null) {
+        methods.add(rewritten);
+      }
+    }
+
+    if (methods == null)
+      return stmt;
+    return new Stmt.Class(stmt.name, stmt.superclass, methods);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Expr expression = rewrite(stmt.expression);
+    if (expression == stmt.expression)
+      return stmt;
+    return new Stmt.Expression(expression);
+  }
+
+  @Override
+  public Stmt visitForStmt(Stmt.For stmt) {
+    Stmt initializer = rewrite(stmt.initializer);
+    Expr condition = rewrite(stmt.condition);
+    Expr increment = rewrite(stmt.increment);
+    Stmt body = rewrite(stmt.body);
+    if (initializer == stmt.initializer && condition == stmt.condition
+        && increment == stmt.increment && body == stmt.body)
+      return stmt;
+    Stmt.For result = new Stmt.For(initializer, condition, increment, body);
+    result.hoisted = stmt.hoisted;
+    result.counted = stmt.counted;
+    return result;
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    List<Stmt> body = rewrite(stmt.body);
+    if (body == stmt.body)
+      return stmt;
+    return new Stmt.Function(stmt.name, stmt.params, body);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    Expr condition = rewrite(stmt.condition);
+    Stmt thenBranch = rewrite(stmt.thenBranch);
+    Stmt elseBranch = rewrite(stmt.elseBranch);
+    if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch)
+      return stmt;
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    Expr expression = rewrite(stmt.expression);
+    if (expression == stmt.expression)
+      return stmt;
+    return new Stmt.Print(expression);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    Expr value = rewrite(stmt.value);
+    if (value == stmt.value)
+      return stmt;
+    return new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = rewrite(stmt.initializer);
+    if (initializer == stmt.initializer)
+      return stmt;
+    return new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Expr condition = rewrite(stmt.condition);
+    Stmt body = rewrite(stmt.body);
+    if (condition == stmt.condition && body == stmt.body)
+      return stmt;
+    return new Stmt.While(condition, body);
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    Expr value = rewrite(expr.value);
+    if (value == expr.value)
+      return expr;
+    Expr.Assign result = new Expr.Assign(expr.name, value);
+    result.depth = expr.depth;
+    return result;
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr left = rewrite(expr.left);
+    Expr right = rewrite(expr.right);
+    if (left == expr.left && right == expr.right)
+      return expr;
+    Expr.Binary result = new Expr.Binary(left, expr.operator, right);
+    result.operands = expr.operands;
+    return result;
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    Expr callee = rewrite(expr.callee);
+    List<Expr> arguments = rewriteAll(expr.arguments);
+    if (callee == expr.callee && arguments == expr.arguments)
+      return expr;
+    return new Expr.Call(callee, expr.paren, arguments);
+  }
+
+  @Override
+  public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    Expr object = rewrite(expr.object);
+    if (object == expr.object)
+      return expr;
+    return new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    Expr expression = rewrite(expr.expression);
+    if (expression == expr.expression)
+      return expr;
+    return new Expr.Grouping(expression);
+  }
+
+  @Override
+  public Expr visitHoistedExpr(Expr.Hoisted expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitIncrementExpr(Expr.Increment expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitInvokeExpr(Expr.Invoke expr) {
+    Expr object = rewrite(expr.object);
+    List<Expr> arguments = rewriteAll(expr.arguments);
+    if (object == expr.object && arguments == expr.arguments)
+      return expr;
+    return new Expr.Invoke(object, expr.name, expr.paren, arguments);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    Expr left = rewrite(expr.left);
+    Expr right = rewrite(expr.right);
+    if (left == expr.left && right == expr.right)
+      return expr;
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    Expr object = rewrite(expr.object);
+    Expr value = rewrite(expr.value);
+    if (object == expr.object && value == expr.value)
+      return expr;
+    return new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitSuperExpr(Expr.Super expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitThisGetExpr(Expr.ThisGet expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    Expr right = rewrite(expr.right);
+    if (right == expr.right)
+      return expr;
+    Expr.Unary result = new Expr.Unary(expr.operator, right);
+    result.operands = expr.operands;
+    return result;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+}
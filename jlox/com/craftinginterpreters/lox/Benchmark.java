@@ -0,0 +1,185 @@
+// Benchmark.java
+// Micro benchmarks for the interpreter's optimizations
+
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class Benchmark {
+  // Times each case is run, the fastest run is reported
+  private static final int RUNS = 5;
+
+  // Name and source of each superinstruction case
+  private static final String[][] SUPERINSTRUCTIONS = {
+      { "increment",
+          "fun bench() { var i = 0; var j = 0;"
+              + " while (j != 1000000) { i = i + 1; i = i + 1; i = i + 1; j = j + 1; } }"
+              + " bench();" },
+      { "compare-constant",
+          "fun bench() { var i = 0; var b = false;"
+              + " while (i < 1000000) { b = i < 5; b = i >= 5; b = i <= 5; i = i + 1; } }"
+              + " bench();" },
+      { "this-get",
+          "class P { init() { this.x = 1; }"
+              + " sum() { var s = 0; var i = 0;"
+              + " while (i < 1000000) { s = s + this.x + this.x + this.x; i = i + 1; } return s; } }"
+              + " P().sum();" },
+      { "invoke",
+          "class P { one() { return 1; } }"
+              + " fun bench() { var p = P(); var s = 0; var i = 0;"
+              + " while (i < 1000000) { s = s + p.one(); i = i + 1; } }"
+              + " bench();" },
+  };
+
+  // Size of the generated source scanned by the scanner benchmark
+  private static final int SCAN_SIZE = 4 << 20;
+  // Scanning is short and allocates a lot, so it needs more runs
+  private static final int SCAN_RUNS = 30;
+
+  /**
+   * Run the selected benchmark.
+   * 
+   * @param args A list of command line arguments
+   */
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      usage();
+    }
+
+    switch (args[0]) {
+      case "superinstructions":
+        superinstructions();
+        break;
+      case "scan":
+        scan();
+        break;
+      case "parse":
+        parse();
+        break;
+      default:
+        usage();
+    }
+  }
+
+  /**
+   * Print the usage and exit.
+   */
+  private static void usage() {
+    System.out.println("Usage: benchmark [superinstructions|scan|parse]");
+    System.exit(64);
+  }
+
+  /**
+   * Compare each fused node against the unfused nodes it replaces.
+   */
+  private static void superinstructions() {
+    System.out.println(String.format("%-18s %10s %10s %8s", "case", "unfused", "fused", "speedup"));
+    for (String[] test : SUPERINSTRUCTIONS) {
+      Lox.disabledPasses.add("superinstructions");
+      double unfused = time(test[1]);
+      Lox.disabledPasses.remove("superinstructions");
+      double fused = time(test[1]);
+
+      System.out.println(String.format("%-18s %8.1fms %8.1fms %7.2fx",
+          test[0], unfused, fused, unfused / fused));
+    }
+  }
+
+  /**
+   * Measure the throughput of the scanners over a large generated program.
+   */
+  private static void scan() {
+    String source = generate(SCAN_SIZE);
+    ByteBuffer bytes = ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8));
+    double megabytes = bytes.limit() / (double) (1 << 20);
+
+    System.out.println(String.format("%-18s %10s %10s %10s", "scanner", "tokens", "time", "MB/s"));
+    double best = Double.MAX_VALUE;
+    int tokens = 0;
+    for (int i = 0; i < SCAN_RUNS; i++) {
+      long start = System.nanoTime();
+      tokens = new Scanner(source).scanTokens().size();
+      best = Math.min(best, (System.nanoTime() - start) / 1e6);
+    }
+    System.out.println(String.format("%-18s %10d %8.1fms %10.1f", "string", tokens, best, megabytes / best * 1e3));
+
+    best = Double.MAX_VALUE;
+    for (int i = 0; i < SCAN_RUNS; i++) {
+      long start = System.nanoTime();
+      tokens = new ByteScanner(bytes, StandardCharsets.UTF_8).scanTokens().size();
+      best = Math.min(best, (System.nanoTime() - start) / 1e6);
+    }
+    System.out.println(String.format("%-18s %10d %8.1fms %10.1f", "bytes", tokens, best, megabytes / best * 1e3));
+  }
+
+  /**
+   * Measure the throughput of the parser over large generated programs, one
+   * mostly made of declarations and one made of long expressions.
+   * The sources are scanned once, only parsing is timed.
+   */
+  private static void parse() {
+    StringBuilder expressions = new StringBuilder(SCAN_SIZE + 256);
+    while (expressions.length() < SCAN_SIZE)
+      expressions.append("print a * (b + c) - d / e < f == !g or h and i.j(k, l + m * -n) >= o.p.q;\n");
+    String[][] programs = { { "declarations", generate(SCAN_SIZE) }, { "expressions", expressions.toString() } };
+
+    System.out.println(String.format("%-18s %10s %10s %10s %12s", "program", "statements", "time", "MB/s", "tokens/s"));
+    for (String[] program : programs) {
+      List<Token> tokens = new Scanner(program[1]).scanTokens();
+      double megabytes = program[1].length() / (double) (1 << 20);
+
+      double best = Double.MAX_VALUE;
+      int statements = 0;
+      for (int i = 0; i < SCAN_RUNS; i++) {
+        long start = System.nanoTime();
+        statements = new Parser(tokens).parse().size();
+        best = Math.min(best, (System.nanoTime() - start) / 1e6);
+      }
+      System.out.println(String.format("%-18s %10d %8.1fms %10.1f %12.0f", program[0], statements, best,
+          megabytes / best * 1e3, tokens.size() / best * 1e3));
+    }
+  }
+
+  /**
+   * Generate a program mixing declarations, keywords, numbers and strings.
+   * 
+   * @param size approximate length of the program
+   * @return {@code String}
+   */
+  private static String generate(int size) {
+    StringBuilder source = new StringBuilder(size + 256);
+    for (int i = 0; source.length() < size; i++) {
+      source.append("class Shape").append(i).append(" < Base {\n")
+          .append("  area(width, height) {\n")
+          .append("    // Scale by the configured factor\n")
+          .append("    var factor = 0.5 * ").append(i % 97).append(".25;\n")
+          .append("    if (width >= 10 and height != nil) return width * height * factor;\n")
+          .append("    for (var i = 0; i < 100; i = i + 1) { print \"shape ").append(i).append("\"; }\n")
+          .append("    while (false or this.visible) { super.draw(1234567); }\n")
+          .append("    return true;\n")
+          .append("  }\n")
+          .append("}\n");
+    }
+    return source.toString();
+  }
+
+  /**
+   * Compile and run a script several times.
+   * 
+   * @param source
+   * @return the fastest run in milliseconds
+   */
+  private static double time(String source) {
+    double best = Double.MAX_VALUE;
+    for (int i = 0; i < RUNS; i++) {
+      Interpreter interpreter = new Interpreter();
+      List<Stmt> statements = Lox.compile(source, interpreter);
+      long start = System.nanoTime();
+      interpreter.interpret(statements);
+      best = Math.min(best, (System.nanoTime() - start) / 1e6);
+    }
+    return best;
+  }
+}
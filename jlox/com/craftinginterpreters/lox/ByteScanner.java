@@ -0,0 +1,497 @@
+// ByteScanner.java
+// Scanner working on the encoded bytes of a memory-mapped script file.
+
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+class ByteScanner implements TokenSource {
+  private final ByteBuffer source;
+  private final Charset charset;
+  private final List<Token> tokens = new ArrayList<>();
+  // Init Scanner state, positions are byte offsets
+  private int start = 0;
+  private int current = 0;
+  private int line = 1;
+  // Identifiers seen so far, each name is decoded only once
+  private String[] names = new String[64];
+  private int nameCount = 0;
+  // Scratch space for the text of number literals
+  private char[] scratch = new char[32];
+
+  /**
+   * Initializes the Scanner with the encoded source code.
+   * 
+   * @param source  bytes of the source code, from position 0 to the limit
+   * @param charset charset the source is encoded in
+   */
+  ByteScanner(ByteBuffer source, Charset charset) {
+    this.source = source;
+    this.charset = charset;
+  }
+
+  /**
+   * Check if a script file in this charset can be scanned as bytes.
+   * Outside of string literals Lox is ASCII, so any charset encoding ASCII
+   * as itself and never using ASCII bytes inside other characters works.
+   * 
+   * @param charset
+   * @return {@code boolean}
+   */
+  static boolean supports(Charset charset) {
+    return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Scan a script file without reading it into memory first.
+   * The file is memory-mapped, so scanning starts without copying or
+   * decoding it, and only the text of string literals is decoded.
+   * 
+   * @param path
+   * @param charset
+   * @return a list of tokens
+   * @throws IOException If the file can't be read
+   */
+  static List<Token> scanFile(Path path, Charset charset) throws IOException {
+    return open(path, charset).scanTokens();
+  }
+
+  /**
+   * Create a scanner over a memory-mapped script file.
+   * The mapping stays valid once the file is closed.
+   * 
+   * @param path
+   * @param charset
+   * @return {@code ByteScanner}
+   * @throws IOException If the file can't be read
+   */
+  static ByteScanner open(Path path, Charset charset) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new ByteScanner(source, charset);
+    }
+  }
+
+  /**
+   * Scan the entire source code and produce tokens.
+   * 
+   * @return a list of tokens
+   */
+  List<Token> scanTokens() {
+    while (!isAtEnd()) {
+      // We are at the beginning of the next lexeme.
+      start = current;
+      scanToken();
+    }
+
+    tokens.add(new Token(EOF, "", current, null, line));
+    return tokens;
+  }
+
+  /**
+   * Scan tokens on demand instead of all at once.
+   * A scanner is used either this way or through {@code scanTokens()}.
+   */
+  @Override
+  public Token nextToken() {
+    while (tokens.isEmpty() && !isAtEnd()) {
+      start = current;
+      scanToken();
+    }
+
+    if (tokens.isEmpty())
+      return new Token(EOF, "", current, null, line);
+    return tokens.remove(0);
+  }
+
+  /**
+   * Scan and produce one token
+   */
+  private void scanToken() {
+    byte c = advance();
+    switch (c) {
+      // Single character lexeme
+      case '(':
+        addToken(LEFT_PAREN);
+        break;
+      case ')':
+        addToken(RIGHT_PAREN);
+        break;
+      case '{':
+        addToken(LEFT_BRACE);
+        break;
+      case '}':
+        addToken(RIGHT_BRACE);
+        break;
+      case ',':
+        addToken(COMMA);
+        break;
+      case '.':
+        addToken(DOT);
+        break;
+      case '-':
+        addToken(MINUS);
+        break;
+      case '+':
+        addToken(PLUS);
+        break;
+      case ';':
+        addToken(SEMICOLON);
+        break;
+      case '*':
+        addToken(STAR);
+        break;
+      // Operators
+      case '!':
+        addToken(match('=') ? BANG_EQUAL : BANG);
+        break;
+      case '=':
+        addToken(match('=') ? EQUAL_EQUAL : EQUAL);
+        break;
+      case '<':
+        addToken(match('=') ? LESS_EQUAL : LESS);
+        break;
+      case '>':
+        addToken(match('=') ? GREATER_EQUAL : GREATER);
+        break;
+      case '/':
+        if (match('/')) {
+          // A comment goes until the end of the line.
+          while (peek() != '\n' && !isAtEnd())
+            advance();
+        } else if (match('*')) {
+          blockComment();
+        } else {
+          addToken(SLASH);
+        }
+        break;
+
+      case ' ':
+      case '\r':
+      case '\t':
+        // Ignore whitespace.
+        break;
+
+      case '\n':
+        line++;
+        break;
+
+      case '"':
+        // String literal
+        string();
+        break;
+
+      default:
+        if (isDigit(c)) {
+          // Number literal
+          number();
+        } else if (isAlpha(c)) {
+          identifier();
+        } else {
+          // The rest of a multi-byte character is part of the same error
+          if (c < 0 && charset.equals(StandardCharsets.UTF_8)) {
+            while (!isAtEnd() && (peek() & 0xC0) == 0x80)
+              advance();
+          }
+          Lox.error(line, "Unexpected character.");
+        }
+        break;
+    }
+  }
+
+  /**
+   * Scan and discard a block comment
+   */
+  private void blockComment() {
+    while (!isAtEnd() && (peek() != '*' || peekNext() != '/')) {
+      if (match('/')) {
+        // Nesting
+        if (match('*'))
+          blockComment();
+        // What follows a lone "/" or a nested comment is checked again
+        continue;
+      }
+      // Multi-line
+      if (peek() == '\n')
+        line++;
+      advance();
+    }
+    if (isAtEnd()) {
+      Lox.error(line, "Unterminated block comment.");
+      return;
+    }
+    // The closing "*/"
+    advance();
+    advance();
+  }
+
+  /**
+   * Scan and produce an identifier.
+   */
+  private void identifier() {
+    int end = current;
+    while (end < source.limit() && isAlphaNumeric(source.get(end)))
+      end++;
+    current = end;
+
+    // Check if the identifier is a reserved keyword or not
+    int length = current - start;
+    TokenType type = Scanner.keyword((char) source.get(start),
+        length > 1 ? (char) source.get(start + 1) : '\0', length);
+    if (type != null) {
+      String spelling = Scanner.spellings[type.ordinal()];
+      if (spelling.length() == length && matches(start, spelling)) {
+        tokens.add(new Token(type, spelling, start, null, line));
+        return;
+      }
+    }
+    tokens.add(new Token(IDENTIFIER, name(start, current), start, null, line));
+  }
+
+  /**
+   * Get the text of an identifier, shared by every occurrence of the name.
+   * Identifiers are ASCII, so the bytes are hashed the way
+   * {@code String.hashCode()} hashes the name.
+   * 
+   * @param from start of the identifier
+   * @param to   end of the identifier
+   * @return {@code String}
+   */
+  private String name(int from, int to) {
+    int length = to - from;
+    int hash = 0;
+    for (int i = from; i < to; i++)
+      hash = 31 * hash + source.get(i);
+
+    int mask = names.length - 1;
+    int slot = hash & mask;
+    for (String name = names[slot]; name != null; name = names[slot]) {
+      if (name.length() == length && matches(from, name))
+        return name;
+      slot = (slot + 1) & mask;
+    }
+
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++)
+      chars[i] = (char) source.get(from + i);
+    String name = new String(chars);
+    names[slot] = name;
+    if (++nameCount * 2 > names.length)
+      growNames();
+    return name;
+  }
+
+  /**
+   * Check if the bytes at a position spell a name.
+   * 
+   * @param from
+   * @param name
+   * @return {@code boolean}
+   */
+  private boolean matches(int from, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      if (source.get(from + i) != name.charAt(i))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Double the size of the identifier table.
+   */
+  private void growNames() {
+    String[] old = names;
+    names = new String[old.length * 2];
+    int mask = names.length - 1;
+    for (String name : old) {
+      if (name == null)
+        continue;
+      int slot = name.hashCode() & mask;
+      while (names[slot] != null)
+        slot = (slot + 1) & mask;
+      names[slot] = name;
+    }
+  }
+
+  /**
+   * Scan and produce a number literal
+   */
+  private void number() {
+    // The digits are accumulated while they are scanned
+    long mantissa = source.get(start) - '0';
+    int digits = 1;
+    while (isDigit(peek())) {
+      mantissa = mantissa * 10 + (advance() - '0');
+      digits++;
+    }
+
+    // Look for a fractional part.
+    int fraction = 0;
+    if (peek() == '.' && isDigit(peekNext())) {
+      // Consume the "."
+      advance();
+
+      while (isDigit(peek())) {
+        mantissa = mantissa * 10 + (advance() - '0');
+        digits++;
+        fraction++;
+      }
+    }
+
+    int length = current - start;
+    if (length > scratch.length)
+      scratch = new char[Math.max(length, scratch.length * 2)];
+    for (int i = 0; i < length; i++)
+      scratch[i] = (char) source.get(start + i);
+    String text = new String(scratch, 0, length);
+    // Same as the string scanner, see Scanner.toDouble
+    double value = digits <= Scanner.EXACT_DIGITS
+        ? mantissa / Scanner.powersOfTen[fraction]
+        : Double.parseDouble(text);
+    tokens.add(new Token(NUMBER, text, start, value, line));
+  }
+
+  /**
+   * Scan and produce a string literal token.
+   * This is the only place bytes are decoded: a quote or a newline byte is
+   * never part of another character, so the literal is found first and then
+   * decoded in one go.
+   */
+  private void string() {
+    // Consume characters until closing quote or EOF
+    while (peek() != '"' && !isAtEnd()) {
+      // Support for multi-line strings
+      if (peek() == '\n')
+        line++;
+      advance();
+    }
+
+    // Error to have unterminated string
+    if (isAtEnd()) {
+      Lox.error(line, "Unterminated string.");
+      return;
+    }
+
+    // The closing ".
+    advance();
+
+    // Trim the surrounding quotes.
+    String value = Interner.intern(decode(start + 1, current - 1));
+    tokens.add(new Token(STRING, "\"" + value + "\"", start, value, line));
+  }
+
+  /**
+   * Decode part of the source.
+   * 
+   * @param from
+   * @param to
+   * @return {@code String}
+   */
+  private String decode(int from, int to) {
+    return charset.decode(source.slice(from, to - from)).toString();
+  }
+
+  /**
+   * Consume the current byte if it matches what we expected.
+   * 
+   * @param expected character
+   * @return {@code boolean}
+   */
+  private boolean match(char expected) {
+    if (isAtEnd())
+      return false;
+    if (source.get(current) != expected)
+      return false;
+    current++;
+    return true;
+  }
+
+  /**
+   * Look at the current byte without consuming it.
+   * 
+   * @return current byte
+   */
+  private byte peek() {
+    if (isAtEnd())
+      return '\0';
+    return source.get(current);
+  }
+
+  /**
+   * Look at the next byte.
+   * 
+   * @return next byte
+   */
+  private byte peekNext() {
+    if (current + 1 >= source.limit())
+      return '\0';
+    return source.get(current + 1);
+  }
+
+  /**
+   * Check if a byte is an ASCII letter.
+   * 
+   * @param c
+   * @return {@code boolean}
+   */
+  private boolean isAlpha(byte c) {
+    return c >= 0 && Scanner.classes[c] == Scanner.ALPHA;
+  }
+
+  /**
+   * Check if a byte is an ASCII letter or digit.
+   * 
+   * @param c
+   * @return {@code boolean}
+   */
+  private boolean isAlphaNumeric(byte c) {
+    return c >= 0 && Scanner.classes[c] != 0;
+  }
+
+  /**
+   * Check if a byte is an ASCII digit.
+   * 
+   * @param c
+   * @return {@code boolean}
+   */
+  private boolean isDigit(byte c) {
+    return c >= 0 && Scanner.classes[c] == Scanner.DIGIT;
+  }
+
+  /**
+   * Check if the whole source was scanned.
+   * 
+   * @return {@code boolean}
+   */
+  private boolean isAtEnd() {
+    return current >= source.limit();
+  }
+
+  /**
+   * Consume the next byte and return it.
+   * 
+   * @return the byte at the position before moving
+   */
+  private byte advance() {
+    return source.get(current++);
+  }
+
+  /**
+   * Add a token always spelled the same way.
+   * 
+   * @param type
+   */
+  private void addToken(TokenType type) {
+    tokens.add(new Token(type, Scanner.spellings[type.ordinal()], start, null, line));
+  }
+}
@@ -0,0 +1,64 @@
+// CallSite.java
+// Runtime profile of a call site, used to decide when to inline the callee.
+
+package com.craftinginterpreters.lox;
+
+class CallSite {
+  // Calls to the same target before its body is spliced into the site
+  static final int INLINE_THRESHOLD = 50;
+
+  int calls = 0;
+  // The only function declaration seen at this site so far
+  Stmt.Function target = null;
+  // Set once a second target was seen, the site is never inlined again
+  boolean megamorphic = false;
+  // Set when the target was checked and can't be inlined
+  boolean notInlinable = false;
+  // The callee body spliced into the site
+  Expr inlined = null;
+
+  /**
+   * Record a call and return the inlined body if it can be used.
+   * The target's declaration is the identity guard. When the guard fails the
+   * site deoptimizes back to normal calls for good.
+   * 
+   * @param callee      the value being called
+   * @param isMethod    whether the receiver is passed as the first argument
+   * @param interpreter interpreter that compiles a deferred body
+   * @return inlined body, or {@code null} to make a normal call
+   */
+  Expr profile(Object callee, boolean isMethod, Interpreter interpreter) {
+    calls++;
+    if (megamorphic)
+      return null;
+
+    if (!(callee instanceof LoxFunction)) {
+      deoptimize();
+      return null;
+    }
+
+    Stmt.Function declaration = ((LoxFunction) callee).declaration();
+    if (target == null) {
+      target = declaration;
+    } else if (target != declaration) {
+      deoptimize();
+      return null;
+    }
+
+    if (inlined == null && !notInlinable && calls >= INLINE_THRESHOLD) {
+      inlined = Inliner.inline((LoxFunction) callee, isMethod, interpreter);
+      notInlinable = inlined == null;
+    }
+
+    return inlined;
+  }
+
+  /**
+   * Drop the inlined body and stop profiling the site.
+   */
+  private void deoptimize() {
+    megamorphic = true;
+    target = null;
+    inlined = null;
+  }
+}
@@ -0,0 +1,515 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class CompactAst {
+  private CompactAst() {
+  }
+
+  static int encode(CompactProgram out, Expr expr) {
+    if (expr == null)
+      return -1;
+    switch (expr.kind) {
+      case Expr.ASSIGN: {
+        Expr.Assign node = (Expr.Assign) expr;
+        int value = encode(out, node.value);
+        int position = out.begin(Expr.ASSIGN);
+        out.add(node.name);
+        out.add(value);
+        out.add(node.depth);
+        return position;
+      }
+      case Expr.BINARY: {
+        Expr.Binary node = (Expr.Binary) expr;
+        int left = encode(out, node.left);
+        int right = encode(out, node.right);
+        int position = out.begin(Expr.BINARY);
+        out.add(left);
+        out.add(node.operator);
+        out.add(right);
+        out.add(node.seen);
+        out.add(node.operands);
+        return position;
+      }
+      case Expr.CALL: {
+        Expr.Call node = (Expr.Call) expr;
+        int callee = encode(out, node.callee);
+        int[] arguments = new int[node.arguments.size()];
+        for (int i = 0; i < arguments.length; i++)
+          arguments[i] = encode(out, node.arguments.get(i));
+        int position = out.begin(Expr.CALL);
+        out.add(callee);
+        out.add(node.paren);
+        out.add(arguments);
+        return position;
+      }
+      case Expr.COMPARE_CONSTANT: {
+        Expr.CompareConstant node = (Expr.CompareConstant) expr;
+        int position = out.begin(Expr.COMPARE_CONSTANT);
+        out.add(node.name);
+        out.add(node.operator);
+        out.add(node.constant);
+        out.add(node.depth);
+        return position;
+      }
+      case Expr.GET: {
+        Expr.Get node = (Expr.Get) expr;
+        int object = encode(out, node.object);
+        int position = out.begin(Expr.GET);
+        out.add(object);
+        out.add(node.name);
+        return position;
+      }
+      case Expr.GROUPING: {
+        Expr.Grouping node = (Expr.Grouping) expr;
+        int expression = encode(out, node.expression);
+        int position = out.begin(Expr.GROUPING);
+        out.add(expression);
+        return position;
+      }
+      case Expr.HOISTED: {
+        Expr.Hoisted node = (Expr.Hoisted) expr;
+        int expression = encode(out, node.expression);
+        int position = out.begin(Expr.HOISTED);
+        out.add(expression);
+        out.add(node.index);
+        out.add(node.values);
+        return position;
+      }
+      case Expr.INCREMENT: {
+        Expr.Increment node = (Expr.Increment) expr;
+        int position = out.begin(Expr.INCREMENT);
+        out.add(node.name);
+        out.add(node.operator);
+        out.add(node.delta);
+        out.add(node.depth);
+        return position;
+      }
+      case Expr.INLINE_ARGUMENT: {
+        Expr.InlineArgument node = (Expr.InlineArgument) expr;
+        int position = out.begin(Expr.INLINE_ARGUMENT);
+        out.add(node.name);
+        out.add(node.index);
+        return position;
+      }
+      case Expr.INVOKE: {
+        Expr.Invoke node = (Expr.Invoke) expr;
+        int object = encode(out, node.object);
+        int[] arguments = new int[node.arguments.size()];
+        for (int i = 0; i < arguments.length; i++)
+          arguments[i] = encode(out, node.arguments.get(i));
+        int position = out.begin(Expr.INVOKE);
+        out.add(object);
+        out.add(node.name);
+        out.add(node.paren);
+        out.add(arguments);
+        return position;
+      }
+      case Expr.LITERAL: {
+        Expr.Literal node = (Expr.Literal) expr;
+        int position = out.begin(Expr.LITERAL);
+        out.add(node.value);
+        return position;
+      }
+      case Expr.LOGICAL: {
+        Expr.Logical node = (Expr.Logical) expr;
+        int left = encode(out, node.left);
+        int right = encode(out, node.right);
+        int position = out.begin(Expr.LOGICAL);
+        out.add(left);
+        out.add(node.operator);
+        out.add(right);
+        return position;
+      }
+      case Expr.SET: {
+        Expr.Set node = (Expr.Set) expr;
+        int object = encode(out, node.object);
+        int value = encode(out, node.value);
+        int position = out.begin(Expr.SET);
+        out.add(object);
+        out.add(node.name);
+        out.add(value);
+        return position;
+      }
+      case Expr.SUPER: {
+        Expr.Super node = (Expr.Super) expr;
+        int position = out.begin(Expr.SUPER);
+        out.add(node.keyword);
+        out.add(node.method);
+        out.add(node.depth);
+        return position;
+      }
+      case Expr.THIS: {
+        Expr.This node = (Expr.This) expr;
+        int position = out.begin(Expr.THIS);
+        out.add(node.keyword);
+        out.add(node.depth);
+        return position;
+      }
+      case Expr.THIS_GET: {
+        Expr.ThisGet node = (Expr.ThisGet) expr;
+        int position = out.begin(Expr.THIS_GET);
+        out.add(node.keyword);
+        out.add(node.name);
+        out.add(node.depth);
+        return position;
+      }
+      case Expr.UNARY: {
+        Expr.Unary node = (Expr.Unary) expr;
+        int right = encode(out, node.right);
+        int position = out.begin(Expr.UNARY);
+        out.add(node.operator);
+        out.add(right);
+        out.add(node.operands);
+        return position;
+      }
+      case Expr.VARIABLE: {
+        Expr.Variable node = (Expr.Variable) expr;
+        int position = out.begin(Expr.VARIABLE);
+        out.add(node.name);
+        out.add(node.depth);
+        return position;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown expr kind.");
+    }
+  }
+
+  static int encode(CompactProgram out, Stmt stmt) {
+    if (stmt == null)
+      return -1;
+    switch (stmt.kind) {
+      case Stmt.BLOCK: {
+        Stmt.Block node = (Stmt.Block) stmt;
+        int[] statements = new int[node.statements.size()];
+        for (int i = 0; i < statements.length; i++)
+          statements[i] = encode(out, node.statements.get(i));
+        int position = out.begin(Stmt.BLOCK);
+        out.add(statements);
+        return position;
+      }
+      case Stmt.CLASS: {
+        Stmt.Class node = (Stmt.Class) stmt;
+        int superclass = encode(out, node.superclass);
+        int[] methods = new int[node.methods.size()];
+        for (int i = 0; i < methods.length; i++)
+          methods[i] = encode(out, node.methods.get(i));
+        int position = out.begin(Stmt.CLASS);
+        out.add(node.name);
+        out.add(superclass);
+        out.add(methods);
+        return position;
+      }
+      case Stmt.EXPRESSION: {
+        Stmt.Expression node = (Stmt.Expression) stmt;
+        int expression = encode(out, node.expression);
+        int position = out.begin(Stmt.EXPRESSION);
+        out.add(expression);
+        return position;
+      }
+      case Stmt.FOR: {
+        Stmt.For node = (Stmt.For) stmt;
+        int initializer = encode(out, node.initializer);
+        int condition = encode(out, node.condition);
+        int increment = encode(out, node.increment);
+        int body = encode(out, node.body);
+        int position = out.begin(Stmt.FOR);
+        out.add(initializer);
+        out.add(condition);
+        out.add(increment);
+        out.add(body);
+        out.add(node.hoisted);
+        out.add(node.counted ? 1 : 0);
+        return position;
+      }
+      case Stmt.FUNCTION: {
+        Stmt.Function node = (Stmt.Function) stmt;
+        int[] body = new int[node.body.size()];
+        for (int i = 0; i < body.length; i++)
+          body[i] = encode(out, node.body.get(i));
+        int position = out.begin(Stmt.FUNCTION);
+        out.add(node.name);
+        out.add(node.params);
+        out.add(body);
+        return position;
+      }
+      case Stmt.IF: {
+        Stmt.If node = (Stmt.If) stmt;
+        int condition = encode(out, node.condition);
+        int thenBranch = encode(out, node.thenBranch);
+        int elseBranch = encode(out, node.elseBranch);
+        int position = out.begin(Stmt.IF);
+        out.add(condition);
+        out.add(thenBranch);
+        out.add(elseBranch);
+        return position;
+      }
+      case Stmt.PRINT: {
+        Stmt.Print node = (Stmt.Print) stmt;
+        int expression = encode(out, node.expression);
+        int position = out.begin(Stmt.PRINT);
+        out.add(expression);
+        return position;
+      }
+      case Stmt.RETURN: {
+        Stmt.Return node = (Stmt.Return) stmt;
+        int value = encode(out, node.value);
+        int position = out.begin(Stmt.RETURN);
+        out.add(node.keyword);
+        out.add(value);
+        return position;
+      }
+      case Stmt.VAR: {
+        Stmt.Var node = (Stmt.Var) stmt;
+        int initializer = encode(out, node.initializer);
+        int position = out.begin(Stmt.VAR);
+        out.add(node.name);
+        out.add(initializer);
+        return position;
+      }
+      case Stmt.WHILE: {
+        Stmt.While node = (Stmt.While) stmt;
+        int condition = encode(out, node.condition);
+        int body = encode(out, node.body);
+        int position = out.begin(Stmt.WHILE);
+        out.add(condition);
+        out.add(body);
+        return position;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown stmt kind.");
+    }
+  }
+
+  static Expr decodeExpr(CompactProgram.Decoder in, int position) {
+    if (position < 0)
+      return null;
+    switch (in.seek(position)) {
+      case Expr.ASSIGN: {
+        Token name = in.readToken();
+        int value = in.read();
+        int depth = in.read();
+        Expr.Assign node = new Expr.Assign(name, decodeExpr(in, value));
+        node.depth = depth;
+        return node;
+      }
+      case Expr.BINARY: {
+        int left = in.read();
+        Token operator = in.readToken();
+        int right = in.read();
+        int seen = in.read();
+        int operands = in.read();
+        Expr.Binary node = new Expr.Binary(decodeExpr(in, left), operator, decodeExpr(in, right));
+        node.seen = seen;
+        node.operands = operands;
+        return node;
+      }
+      case Expr.CALL: {
+        int callee = in.read();
+        Token paren = in.readToken();
+        int[] arguments = in.readList();
+        List<Expr> argumentsNodes = new ArrayList<>(arguments.length);
+        for (int child : arguments)
+          argumentsNodes.add(decodeExpr(in, child));
+        Expr.Call node = new Expr.Call(decodeExpr(in, callee), paren, argumentsNodes);
+        return node;
+      }
+      case Expr.COMPARE_CONSTANT: {
+        Token name = in.readToken();
+        Token operator = in.readToken();
+        Double constant = (Double) in.readConstant();
+        int depth = in.read();
+        Expr.CompareConstant node = new Expr.CompareConstant(name, operator, constant);
+        node.depth = depth;
+        return node;
+      }
+      case Expr.GET: {
+        int object = in.read();
+        Token name = in.readToken();
+        Expr.Get node = new Expr.Get(decodeExpr(in, object), name);
+        return node;
+      }
+      case Expr.GROUPING: {
+        int expression = in.read();
+        Expr.Grouping node = new Expr.Grouping(decodeExpr(in, expression));
+        return node;
+      }
+      case Expr.HOISTED: {
+        int expression = in.read();
+        int index = in.read();
+        Object[] values = in.readArray();
+        Expr.Hoisted node = new Expr.Hoisted(decodeExpr(in, expression), index);
+        node.values = values;
+        return node;
+      }
+      case Expr.INCREMENT: {
+        Token name = in.readToken();
+        Token operator = in.readToken();
+        Double delta = (Double) in.readConstant();
+        int depth = in.read();
+        Expr.Increment node = new Expr.Increment(name, operator, delta);
+        node.depth = depth;
+        return node;
+      }
+      case Expr.INLINE_ARGUMENT: {
+        Token name = in.readToken();
+        int index = in.read();
+        Expr.InlineArgument node = new Expr.InlineArgument(name, index);
+        return node;
+      }
+      case Expr.INVOKE: {
+        int object = in.read();
+        Token name = in.readToken();
+        Token paren = in.readToken();
+        int[] arguments = in.readList();
+        List<Expr> argumentsNodes = new ArrayList<>(arguments.length);
+        for (int child : arguments)
+          argumentsNodes.add(decodeExpr(in, child));
+        Expr.Invoke node = new Expr.Invoke(decodeExpr(in, object), name, paren, argumentsNodes);
+        return node;
+      }
+      case Expr.LITERAL: {
+        Object value = in.readConstant();
+        Expr.Literal node = new Expr.Literal(value);
+        return node;
+      }
+      case Expr.LOGICAL: {
+        int left = in.read();
+        Token operator = in.readToken();
+        int right = in.read();
+        Expr.Logical node = new Expr.Logical(decodeExpr(in, left), operator, decodeExpr(in, right));
+        return node;
+      }
+      case Expr.SET: {
+        int object = in.read();
+        Token name = in.readToken();
+        int value = in.read();
+        Expr.Set node = new Expr.Set(decodeExpr(in, object), name, decodeExpr(in, value));
+        return node;
+      }
+      case Expr.SUPER: {
+        Token keyword = in.readToken();
+        Token method = in.readToken();
+        int depth = in.read();
+        Expr.Super node = new Expr.Super(keyword, method);
+        node.depth = depth;
+        return node;
+      }
+      case Expr.THIS: {
+        Token keyword = in.readToken();
+        int depth = in.read();
+        Expr.This node = new Expr.This(keyword);
+        node.depth = depth;
+        return node;
+      }
+      case Expr.THIS_GET: {
+        Token keyword = in.readToken();
+        Token name = in.readToken();
+        int depth = in.read();
+        Expr.ThisGet node = new Expr.ThisGet(keyword, name);
+        node.depth = depth;
+        return node;
+      }
+      case Expr.UNARY: {
+        Token operator = in.readToken();
+        int right = in.read();
+        int operands = in.read();
+        Expr.Unary node = new Expr.Unary(operator, decodeExpr(in, right));
+        node.operands = operands;
+        return node;
+      }
+      case Expr.VARIABLE: {
+        Token name = in.readToken();
+        int depth = in.read();
+        Expr.Variable node = new Expr.Variable(name);
+        node.depth = depth;
+        return node;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown expr kind.");
+    }
+  }
+
+  static Stmt decodeStmt(CompactProgram.Decoder in, int position) {
+    if (position < 0)
+      return null;
+    switch (in.seek(position)) {
+      case Stmt.BLOCK: {
+        int[] statements = in.readList();
+        List<Stmt> statementsNodes = new ArrayList<>(statements.length);
+        for (int child : statements)
+          statementsNodes.add(decodeStmt(in, child));
+        Stmt.Block node = new Stmt.Block(statementsNodes);
+        return node;
+      }
+      case Stmt.CLASS: {
+        Token name = in.readToken();
+        int superclass = in.read();
+        int[] methods = in.readList();
+        List<Stmt.Function> methodsNodes = new ArrayList<>(methods.length);
+        for (int child : methods)
+          methodsNodes.add((Stmt.Function) decodeStmt(in, child));
+        Stmt.Class node = new Stmt.Class(name, (Expr.Variable) decodeExpr(in, superclass), methodsNodes);
+        return node;
+      }
+      case Stmt.EXPRESSION: {
+        int expression = in.read();
+        Stmt.Expression node = new Stmt.Expression(decodeExpr(in, expression));
+        return node;
+      }
+      case Stmt.FOR: {
+        int initializer = in.read();
+        int condition = in.read();
+        int increment = in.read();
+        int body = in.read();
+        Object[] hoisted = in.readArray();
+        boolean counted = in.read() != 0;
+        Stmt.For node = new Stmt.For(decodeStmt(in, initializer), decodeExpr(in, condition), decodeExpr(in, increment), decodeStmt(in, body));
+        node.hoisted = hoisted;
+        node.counted = counted;
+        return node;
+      }
+      case Stmt.FUNCTION: {
+        Token name = in.readToken();
+        List<Token> params = in.readTokens();
+        int body = in.skipList();
+        Stmt.Function node = new Stmt.Function(name, params, new ArrayList<>());
+        node.lazy = new LazyBody(in.program, body);
+        return node;
+      }
+      case Stmt.IF: {
+        int condition = in.read();
+        int thenBranch = in.read();
+        int elseBranch = in.read();
+        Stmt.If node = new Stmt.If(decodeExpr(in, condition), decodeStmt(in, thenBranch), decodeStmt(in, elseBranch));
+        return node;
+      }
+      case Stmt.PRINT: {
+        int expression = in.read();
+        Stmt.Print node = new Stmt.Print(decodeExpr(in, expression));
+        return node;
+      }
+      case Stmt.RETURN: {
+        Token keyword = in.readToken();
+        int value = in.read();
+        Stmt.Return node = new Stmt.Return(keyword, decodeExpr(in, value));
+        return node;
+      }
+      case Stmt.VAR: {
+        Token name = in.readToken();
+        int initializer = in.read();
+        Stmt.Var node = new Stmt.Var(name, decodeExpr(in, initializer));
+        return node;
+      }
+      case Stmt.WHILE: {
+        int condition = in.read();
+        int body = in.read();
+        Stmt.While node = new Stmt.While(decodeExpr(in, condition), decodeStmt(in, body));
+        return node;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown stmt kind.");
+    }
+  }
+}
@@ -0,0 +1,519 @@
+// CompactProgram.java
+// A resolved program stored in flat arrays instead of a tree of objects.
+
+package com.craftinginterpreters.lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+class CompactProgram {
+  // Tags of the values in a written program
+  private static final int NIL = 0;
+  private static final int FALSE = 1;
+  private static final int TRUE = 2;
+  private static final int NUMBER = 3;
+  private static final int STRING = 4;
+
+  // Nodes one after the other, see CompactAst for their layout
+  private int[] code = new int[256];
+  private int size = 0;
+  // Values of literals and constants
+  private final List<Object> constants = new ArrayList<>();
+  // Distinct tokens, without their line
+  private final List<Token> symbols = new ArrayList<>();
+  // Positions of the top level statements
+  private int[] statements;
+  // Only needed while the program is encoded
+  private Map<Object, Integer> constantIds = new HashMap<>();
+  private Map<String, Integer> symbolIds = new HashMap<>();
+  private Map<Object[], Integer> arrayIds = new IdentityHashMap<>();
+
+  /**
+   * Encode resolved and optimized statements.
+   * The statements aren't used afterwards, so the tree can be collected
+   * once the caller drops it.
+   * 
+   * @param statements
+   */
+  CompactProgram(List<Stmt> statements) {
+    this.statements = new int[statements.size()];
+    for (int i = 0; i < this.statements.length; i++)
+      this.statements[i] = CompactAst.encode(this, statements.get(i));
+
+    code = Arrays.copyOf(code, size);
+    constantIds = null;
+    symbolIds = null;
+    arrayIds = null;
+  }
+
+  /**
+   * Initialize an empty program to read into.
+   */
+  private CompactProgram() {
+    constantIds = null;
+    symbolIds = null;
+    arrayIds = null;
+  }
+
+  /**
+   * Write the program to a stream. The arrays are written as they are, so
+   * reading it back costs little more than reading the bytes.
+   * 
+   * @param out
+   * @throws IOException If a constant is not a Lox value
+   */
+  void write(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    writeInts(data, code);
+    writeInts(data, statements);
+    data.writeInt(constants.size());
+    for (Object constant : constants)
+      writeValue(data, constant);
+    data.writeInt(symbols.size());
+    for (Token symbol : symbols) {
+      data.writeByte(symbol.type.ordinal());
+      writeString(data, symbol.lexeme());
+      writeValue(data, symbol.literal);
+      data.writeInt(symbol.line);
+    }
+    data.flush();
+  }
+
+  /**
+   * Read a program previously written with {@code write()}. With interning
+   * on, strings read back are copies, so they are interned again.
+   * 
+   * @param in
+   * @return {@code CompactProgram}
+   * @throws IOException If the stream doesn't hold a program
+   */
+  static CompactProgram read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    CompactProgram program = new CompactProgram();
+    program.code = readInts(data);
+    program.size = program.code.length;
+    program.statements = readInts(data);
+    int constants = readCount(data);
+    for (int i = 0; i < constants; i++)
+      program.constants.add(readValue(data));
+    int symbols = readCount(data);
+    TokenType[] types = TokenType.values();
+    for (int i = 0; i < symbols; i++) {
+      int type = data.readUnsignedByte();
+      if (type >= types.length)
+        throw new IOException("Invalid token type.");
+      String lexeme = readString(data);
+      Object literal = readValue(data);
+      program.symbols.add(new Token(types[type], lexeme, literal, data.readInt()));
+    }
+    return program;
+  }
+
+  /**
+   * Execute the program.
+   * Each top level statement is decoded right before it runs and dropped
+   * after, so only the declarations still in use stay as trees. Function
+   * bodies are decoded on their first call.
+   * 
+   * @param interpreter
+   */
+  void run(Interpreter interpreter) {
+    List<Stmt> statement = new ArrayList<>(1);
+    try {
+      for (int position : statements) {
+        statement.clear();
+        statement.add(CompactAst.decodeStmt(new Decoder(), position));
+        if (!interpreter.run(statement))
+          break;
+      }
+    } finally {
+      interpreter.output().flush();
+    }
+  }
+
+  /**
+   * Decode a list of statements, such as the body of a function.
+   * 
+   * @param position position of the list
+   * @return {@code List<Stmt>}
+   */
+  List<Stmt> decodeStatements(int position) {
+    Decoder in = new Decoder();
+    in.cursor = position;
+    int[] nodes = in.readList();
+    List<Stmt> result = new ArrayList<>(nodes.length);
+    for (int node : nodes)
+      result.add(CompactAst.decodeStmt(in, node));
+    return result;
+  }
+
+  /**
+   * Get the size of the encoded program.
+   * 
+   * @return count of ints in the code
+   */
+  int size() {
+    return code.length;
+  }
+
+  /**
+   * Start a node.
+   * 
+   * @param kind kind of the node
+   * @return position of the node
+   */
+  int begin(int kind) {
+    int position = size;
+    add(kind);
+    return position;
+  }
+
+  /**
+   * Append a number or the position of a child.
+   * 
+   * @param value
+   */
+  void add(int value) {
+    if (size == code.length)
+      code = Arrays.copyOf(code, size * 2);
+    code[size++] = value;
+  }
+
+  /**
+   * Append a list of children.
+   * 
+   * @param positions positions of the children
+   */
+  void add(int[] positions) {
+    add(positions.length);
+    for (int position : positions)
+      add(position);
+  }
+
+  /**
+   * Append a token as its symbol and its line.
+   * 
+   * @param token
+   */
+  void add(Token token) {
+    if (token == null) {
+      add(-1);
+      add(0);
+      return;
+    }
+
+    String key = token.type.ordinal() + " " + token.lexeme();
+    Integer id = symbolIds.get(key);
+    if (id == null) {
+      id = symbols.size();
+      // A copy of the text, so the source it was cut from isn't kept
+      symbols.add(new Token(token.type, token.lexeme(), token.literal, token.line));
+      symbolIds.put(key, id);
+    }
+    add(id.intValue());
+    add(token.line);
+  }
+
+  /**
+   * Append a list of tokens.
+   * 
+   * @param tokens
+   */
+  void add(List<Token> tokens) {
+    add(tokens.size());
+    for (Token token : tokens)
+      add(token);
+  }
+
+  /**
+   * Append a value from the constant pool.
+   * 
+   * @param value
+   */
+  void add(Object value) {
+    Integer id = constantIds.get(value);
+    if (id == null) {
+      id = constants.size();
+      constants.add(value);
+      constantIds.put(value, id);
+    }
+    add(id.intValue());
+  }
+
+  /**
+   * Append an array shared between nodes, such as the values of the
+   * expressions hoisted out of a loop. Only its identity and length are
+   * kept, its contents are runtime data.
+   * 
+   * @param array
+   */
+  void add(Object[] array) {
+    if (array == null) {
+      add(-1);
+      add(0);
+      return;
+    }
+
+    Integer id = arrayIds.get(array);
+    if (id == null) {
+      id = arrayIds.size();
+      arrayIds.put(array, id);
+    }
+    add(id.intValue());
+    add(array.length);
+  }
+
+  /**
+   * Write a count followed by the ints. Most ints in the code are kinds,
+   * ids and lines, so each one takes as few bytes as its value needs.
+   * 
+   * @param out
+   * @param values
+   * @throws IOException
+   */
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    byte[] bytes = new byte[values.length * 5];
+    int length = 0;
+    for (int value : values) {
+      // Zigzag, so -1 takes one byte too
+      int bits = (value << 1) ^ (value >> 31);
+      while ((bits & ~0x7F) != 0) {
+        bytes[length++] = (byte) (bits & 0x7F | 0x80);
+        bits >>>= 7;
+      }
+      bytes[length++] = (byte) bits;
+    }
+    out.writeInt(values.length);
+    out.writeInt(length);
+    out.write(bytes, 0, length);
+  }
+
+  /**
+   * Read ints written with {@code writeInts()}.
+   * 
+   * @param in
+   * @return {@code int[]}
+   * @throws IOException If the ints are cut short
+   */
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] values = new int[readCount(in)];
+    byte[] bytes = new byte[readCount(in)];
+    in.readFully(bytes);
+    int position = 0;
+    for (int i = 0; i < values.length; i++) {
+      int bits = 0;
+      for (int shift = 0;; shift += 7) {
+        if (position == bytes.length)
+          throw new IOException("Truncated ints.");
+        byte next = bytes[position++];
+        bits |= (next & 0x7F) << shift;
+        if (next >= 0)
+          break;
+      }
+      values[i] = (bits >>> 1) ^ -(bits & 1);
+    }
+    return values;
+  }
+
+  /**
+   * Read the count of the elements that follow.
+   * 
+   * @param in
+   * @return {@code int}
+   * @throws IOException If the count is negative
+   */
+  private static int readCount(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0)
+      throw new IOException("Invalid count.");
+    return count;
+  }
+
+  /**
+   * Write a string of any length, unlike {@code writeUTF()}.
+   * 
+   * @param out
+   * @param string
+   * @throws IOException
+   */
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a string written with {@code writeString()}.
+   * 
+   * @param in
+   * @return {@code String}
+   * @throws IOException
+   */
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readCount(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Write a constant or the literal of a token, preceded by its tag.
+   * 
+   * @param out
+   * @param value
+   * @throws IOException If the value is not a Lox value
+   */
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NIL);
+    } else if (value instanceof Boolean) {
+      out.writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof Double) {
+      out.writeByte(NUMBER);
+      out.writeDouble((Double) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else {
+      throw new IOException("Can't write a constant of " + value.getClass() + ".");
+    }
+  }
+
+  /**
+   * Read a value written with {@code writeValue()}.
+   * 
+   * @param in
+   * @return {@code Object}
+   * @throws IOException If the tag is unknown
+   */
+  private static Object readValue(DataInputStream in) throws IOException {
+    switch (in.readUnsignedByte()) {
+      case NIL:
+        return null;
+      case FALSE:
+        return false;
+      case TRUE:
+        return true;
+      case NUMBER:
+        return in.readDouble();
+      case STRING:
+        return Interner.intern(readString(in));
+      default:
+        throw new IOException("Invalid constant.");
+    }
+  }
+
+  /**
+   * Reads nodes back from the code. Arrays shared by the nodes decoded with
+   * one decoder are shared again.
+   */
+  class Decoder {
+    final CompactProgram program = CompactProgram.this;
+    private int cursor;
+    private final Map<Integer, Object[]> arrays = new HashMap<>();
+
+    /**
+     * Move to a node.
+     * 
+     * @param position
+     * @return kind of the node
+     */
+    int seek(int position) {
+      cursor = position;
+      return read();
+    }
+
+    /**
+     * Read a number or the position of a child.
+     * 
+     * @return {@code int}
+     */
+    int read() {
+      return code[cursor++];
+    }
+
+    /**
+     * Read a list of children.
+     * 
+     * @return positions of the children
+     */
+    int[] readList() {
+      int[] positions = new int[read()];
+      for (int i = 0; i < positions.length; i++)
+        positions[i] = read();
+      return positions;
+    }
+
+    /**
+     * Skip a list of children, to decode it later.
+     * 
+     * @return position of the list
+     */
+    int skipList() {
+      int position = cursor;
+      int count = read();
+      cursor += count;
+      return position;
+    }
+
+    /**
+     * Read a token.
+     * 
+     * @return {@code Token}
+     */
+    Token readToken() {
+      int id = read();
+      int line = read();
+      if (id < 0)
+        return null;
+      Token symbol = symbols.get(id);
+      if (symbol.line == line)
+        return symbol;
+      return new Token(symbol.type, symbol.lexeme(), symbol.literal, line);
+    }
+
+    /**
+     * Read a list of tokens.
+     * 
+     * @return {@code List<Token>}
+     */
+    List<Token> readTokens() {
+      int count = read();
+      List<Token> tokens = new ArrayList<>(count);
+      for (int i = 0; i < count; i++)
+        tokens.add(readToken());
+      return tokens;
+    }
+
+    /**
+     * Read a value from the constant pool.
+     * 
+     * @return {@code Object}
+     */
+    Object readConstant() {
+      return constants.get(read());
+    }
+
+    /**
+     * Read a shared array.
+     * 
+     * @return {@code Object[]}
+     */
+    Object[] readArray() {
+      int id = read();
+      int length = read();
+      if (id < 0)
+        return null;
+      return arrays.computeIfAbsent(id, key -> new Object[length]);
+    }
+  }
+}
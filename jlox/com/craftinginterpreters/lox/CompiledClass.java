@@ -0,0 +1,122 @@
+// CompiledClass.java
+// A Lox class of a program compiled by loxc, and its instances.
+
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class CompiledClass {
+  final String name;
+  final CompiledClass superclass;
+  private final Map<String, CompiledFunction> methods;
+
+  /**
+   * Initialize a class.
+   * 
+   * @param name
+   * @param superclass the superclass, or {@code null}
+   * @param methods    compiled methods by name
+   */
+  CompiledClass(String name, CompiledClass superclass, Map<String, CompiledFunction> methods) {
+    this.name = name;
+    this.superclass = superclass;
+    this.methods = methods;
+  }
+
+  /**
+   * Find a method in the class or its superclasses.
+   * 
+   * @param name
+   * @return the method, or {@code null}
+   */
+  CompiledFunction findMethod(String name) {
+    CompiledFunction method = methods.get(name);
+    if (method == null && superclass != null)
+      return superclass.findMethod(name);
+    return method;
+  }
+
+  /**
+   * Get the number of arguments of the initializer.
+   * 
+   * @return {@code int}
+   */
+  int arity() {
+    CompiledFunction initializer = findMethod("init");
+    if (initializer == null)
+      return 0;
+    return initializer.arity;
+  }
+
+  /**
+   * Create an instance and run the initializer on it.
+   * 
+   * @param arguments
+   * @return the instance
+   */
+  Object call(Object[] arguments) {
+    Instance instance = new Instance(this);
+    CompiledFunction initializer = findMethod("init");
+    if (initializer != null)
+      initializer.invoke(instance, arguments);
+    return instance;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  /**
+   * An instance of a compiled class.
+   */
+  static class Instance {
+    private final CompiledClass klass;
+    private final Map<String, Object> fields = new HashMap<>();
+
+    Instance(CompiledClass klass) {
+      this.klass = klass;
+    }
+
+    /**
+     * Get a property, fields shadow methods.
+     * 
+     * @param name
+     * @param line line of the property, to report errors
+     * @return the field, or the method bound to the instance
+     */
+    Object get(String name, int line) {
+      Object value = fields.get(name);
+      if (value != null || fields.containsKey(name))
+        return value;
+
+      CompiledFunction method = klass.findMethod(name);
+      if (method != null)
+        return new CompiledFunction.Bound(method, this);
+
+      throw CompiledProgram.error(line, "Undefined property '" + name + "'.");
+    }
+
+    /**
+     * Find a method that isn't shadowed by a field.
+     * 
+     * @param name
+     * @return the method, or {@code null}
+     */
+    CompiledFunction findMethod(String name) {
+      if (fields.containsKey(name))
+        return null;
+      return klass.findMethod(name);
+    }
+
+    void set(String name, Object value) {
+      fields.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+      return klass.name + " instance";
+    }
+  }
+}
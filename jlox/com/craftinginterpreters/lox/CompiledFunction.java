@@ -0,0 +1,104 @@
+// CompiledFunction.java
+// A Lox function or method compiled to a Java class by loxc.
+
+package com.craftinginterpreters.lox;
+
+abstract class CompiledFunction {
+  final String name;
+  final int arity;
+  // Methods are only reached through their class, never as values
+  final boolean isMethod;
+
+  /**
+   * Initialize a compiled function.
+   * 
+   * @param name     name of the function
+   * @param arity    number of parameters
+   * @param isMethod whether it is a method of a class
+   */
+  CompiledFunction(String name, int arity, boolean isMethod) {
+    this.name = name;
+    this.arity = arity;
+    this.isMethod = isMethod;
+  }
+
+  /**
+   * Run the body with any number of arguments.
+   * Functions with up to three parameters also override the method taking
+   * exactly their arguments, so calls don't build an array.
+   * 
+   * @param self      instance bound to "this", unused by functions
+   * @param arguments values of the parameters
+   * @return the returned value
+   */
+  abstract Object invoke(Object self, Object[] arguments);
+
+  Object invoke0(Object self) {
+    return invoke(self, new Object[0]);
+  }
+
+  Object invoke1(Object self, Object a) {
+    return invoke(self, new Object[] { a });
+  }
+
+  Object invoke2(Object self, Object a, Object b) {
+    return invoke(self, new Object[] { a, b });
+  }
+
+  Object invoke3(Object self, Object a, Object b, Object c) {
+    return invoke(self, new Object[] { a, b, c });
+  }
+
+  /**
+   * Get the name shown for the function in stack traces.
+   * 
+   * @return {@code String}
+   */
+  String traceName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return "<fn " + name + ">";
+  }
+
+  /**
+   * A method bound to an instance, made when a method is read as a value.
+   */
+  static class Bound extends CompiledFunction {
+    private final CompiledFunction method;
+    private final Object self;
+
+    Bound(CompiledFunction method, Object self) {
+      super(method.name, method.arity, false);
+      this.method = method;
+      this.self = self;
+    }
+
+    @Override
+    Object invoke(Object ignored, Object[] arguments) {
+      return method.invoke(self, arguments);
+    }
+
+    @Override
+    Object invoke0(Object ignored) {
+      return method.invoke0(self);
+    }
+
+    @Override
+    Object invoke1(Object ignored, Object a) {
+      return method.invoke1(self, a);
+    }
+
+    @Override
+    Object invoke2(Object ignored, Object a, Object b) {
+      return method.invoke2(self, a, b);
+    }
+
+    @Override
+    Object invoke3(Object ignored, Object a, Object b, Object c) {
+      return method.invoke3(self, a, b, c);
+    }
+  }
+}
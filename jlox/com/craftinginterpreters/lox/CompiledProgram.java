@@ -0,0 +1,534 @@
+// CompiledProgram.java
+// Runtime of the Lox programs compiled to Java classes by loxc.
+
+package com.craftinginterpreters.lox;
+
+abstract class CompiledProgram {
+  // Value of a global variable before it is defined
+  static final Object UNDEFINED = new Object();
+  // Condition of a loop without one, not a constant so javac doesn't see
+  // the code after the loop as unreachable
+  static final boolean FOREVER = Boolean.parseBoolean("true");
+  // Where print writes to
+  static final OutputSink out = OutputSink.stdout();
+
+  // The only native function
+  static final CompiledFunction CLOCK = new CompiledFunction("clock", 0, false) {
+    @Override
+    Object invoke(Object self, Object[] arguments) {
+      return invoke0(self);
+    }
+
+    @Override
+    Object invoke0(Object self) {
+      return (double) System.currentTimeMillis() / 1000.0;
+    }
+
+    @Override
+    String traceName() {
+      return toString();
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  };
+
+  /**
+   * Run the top level statements of the program.
+   */
+  abstract void run();
+
+  /**
+   * Run a program, reporting a runtime error the way the interpreter does.
+   * 
+   * @param program
+   */
+  static void start(CompiledProgram program) {
+    try {
+      program.run();
+    } catch (RuntimeError error) {
+      // What was printed before the error comes first
+      out.flush();
+      System.err.println(error.getMessage() + "\n[line " + error.token.line + "]" + error.trace());
+      System.exit(70);
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * Make a runtime error at a line.
+   * 
+   * @param line
+   * @param message
+   * @return {@code RuntimeError}
+   */
+  static RuntimeError error(int line, String message) {
+    return new RuntimeError(new Token(TokenType.EOF, "", null, line), message);
+  }
+
+  /**
+   * Box a captured variable, so closures share it.
+   * 
+   * @param value
+   * @return {@code Object[]}
+   */
+  static Object[] cell(Object value) {
+    return new Object[] { value };
+  }
+
+  /**
+   * Evaluate an expression statement.
+   * 
+   * @param value
+   */
+  static void discard(Object value) {
+  }
+
+  /**
+   * Read a global variable.
+   * 
+   * @param value the value of the global
+   * @param name
+   * @param line
+   * @return the value
+   */
+  static Object global(Object value, String name, int line) {
+    if (value == UNDEFINED)
+      throw error(line, "Undefined variable '" + name + "'.");
+    return value;
+  }
+
+  /**
+   * Check the assignment of a global variable.
+   * 
+   * @param current the value of the global before
+   * @param value   the assigned value
+   * @param name
+   * @param line
+   * @return the assigned value
+   */
+  static Object assign(Object current, Object value, String name, int line) {
+    if (current == UNDEFINED)
+      throw error(line, "Undefined variable '" + name + "'.");
+    return value;
+  }
+
+  /**
+   * Print a value.
+   * 
+   * @param value
+   */
+  static void print(Object value) {
+    if (value instanceof Double) {
+      out.append((double) value);
+    } else if (value == null) {
+      out.append("nil");
+    } else {
+      out.append(value.toString());
+    }
+    out.newline();
+  }
+
+  /**
+   * Print a number.
+   * 
+   * @param value
+   */
+  static void print(double value) {
+    out.append(value);
+    out.newline();
+  }
+
+  /**
+   * Return false for {@code false} and {@code nil}.
+   * Return true for everything else.
+   * 
+   * @param object
+   * @return {@code boolean}
+   */
+  static boolean isTruthy(Object object) {
+    if (object == null)
+      return false;
+    if (object instanceof Boolean)
+      return (boolean) object;
+    return true;
+  }
+
+  /**
+   * Check if 2 values are equal, like {@code Interpreter.isEqual()}.
+   * 
+   * @param a
+   * @param b
+   * @return {@code boolean}
+   */
+  static boolean isEqual(Object a, Object b) {
+    if (a == b)
+      return true;
+    if (a == null)
+      return false;
+    // A String doesn't know it can be equal to a Rope
+    if (b instanceof Rope)
+      return b.equals(a);
+    return a.equals(b);
+  }
+
+  /**
+   * Get a number operand, or throw an error.
+   * 
+   * @param operand
+   * @param line
+   * @return {@code double}
+   */
+  static double number(Object operand, int line) {
+    if (operand instanceof Double)
+      return (double) operand;
+    throw error(line, "Operand must be a number.");
+  }
+
+  /**
+   * Throw an error if either operand is not a number.
+   * 
+   * @param left
+   * @param right
+   * @param line
+   */
+  private static void checkNumbers(Object left, Object right, int line) {
+    if (left instanceof Double && right instanceof Double)
+      return;
+    throw error(line, "Operands must be numbers.");
+  }
+
+  static Object add(Object left, Object right, int line) {
+    if (left instanceof Double && right instanceof Double)
+      return (double) left + (double) right;
+    if (Rope.isString(left) && Rope.isString(right))
+      return Rope.concat(left, right);
+    throw error(line, "Operands must be two numbers or two strings.");
+  }
+
+  static Object subtract(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left - (double) right;
+  }
+
+  static Object multiply(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left * (double) right;
+  }
+
+  static Object divide(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left / (double) right;
+  }
+
+  static boolean greater(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left > (double) right;
+  }
+
+  static boolean greaterEqual(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left >= (double) right;
+  }
+
+  static boolean less(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left < (double) right;
+  }
+
+  static boolean lessEqual(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left <= (double) right;
+  }
+
+  /**
+   * Add a constant to a variable, like {@code Expr.Increment}.
+   * 
+   * @param value  the value of the variable
+   * @param delta
+   * @param isPlus whether the operator was a plus
+   * @param line
+   * @return the new value of the variable
+   */
+  static Object increment(Object value, double delta, boolean isPlus, int line) {
+    if (!(value instanceof Double)) {
+      if (isPlus)
+        throw error(line, "Operands must be two numbers or two strings.");
+      throw error(line, "Operands must be numbers.");
+    }
+    return (double) value + delta;
+  }
+
+  /**
+   * Check the arity of a function and call it with any number of arguments.
+   * 
+   * @param callee
+   * @param arguments
+   * @param line      line of the call
+   * @return
+   */
+  static Object call(Object callee, Object[] arguments, int line) {
+    if (callee instanceof CompiledFunction) {
+      CompiledFunction function = (CompiledFunction) callee;
+      checkArity(function.arity, arguments.length, line);
+      try {
+        return function.invoke(null, arguments);
+      } catch (RuntimeError error) {
+        throw frame(error, callee, line);
+      }
+    }
+
+    if (!(callee instanceof CompiledClass))
+      throw error(line, "Can only call functions and classes.");
+
+    CompiledClass klass = (CompiledClass) callee;
+    checkArity(klass.arity(), arguments.length, line);
+    try {
+      return klass.call(arguments);
+    } catch (RuntimeError error) {
+      throw frame(error, callee, line);
+    }
+  }
+
+  static Object call0(Object callee, int line) {
+    if (!(callee instanceof CompiledFunction) || ((CompiledFunction) callee).arity != 0)
+      return call(callee, new Object[0], line);
+    try {
+      return ((CompiledFunction) callee).invoke0(null);
+    } catch (RuntimeError error) {
+      throw frame(error, callee, line);
+    }
+  }
+
+  static Object call1(Object callee, Object a, int line) {
+    if (!(callee instanceof CompiledFunction) || ((CompiledFunction) callee).arity != 1)
+      return call(callee, new Object[] { a }, line);
+    try {
+      return ((CompiledFunction) callee).invoke1(null, a);
+    } catch (RuntimeError error) {
+      throw frame(error, callee, line);
+    }
+  }
+
+  static Object call2(Object callee, Object a, Object b, int line) {
+    if (!(callee instanceof CompiledFunction) || ((CompiledFunction) callee).arity != 2)
+      return call(callee, new Object[] { a, b }, line);
+    try {
+      return ((CompiledFunction) callee).invoke2(null, a, b);
+    } catch (RuntimeError error) {
+      throw frame(error, callee, line);
+    }
+  }
+
+  static Object call3(Object callee, Object a, Object b, Object c, int line) {
+    if (!(callee instanceof CompiledFunction) || ((CompiledFunction) callee).arity != 3)
+      return call(callee, new Object[] { a, b, c }, line);
+    try {
+      return ((CompiledFunction) callee).invoke3(null, a, b, c);
+    } catch (RuntimeError error) {
+      throw frame(error, callee, line);
+    }
+  }
+
+  /**
+   * Throw an error if the number of arguments doesn't match the arity.
+   * 
+   * @param arity
+   * @param count number of arguments
+   * @param line
+   */
+  private static void checkArity(int arity, int count, int line) {
+    if (count != arity)
+      throw error(line, "Expected " + arity + " arguments but got " + count + ".");
+  }
+
+  /**
+   * Record a call in the Lox stack trace of an error escaping it.
+   * 
+   * @param error
+   * @param callee
+   * @param line   line of the call
+   * @return the error
+   */
+  private static RuntimeError frame(RuntimeError error, Object callee, int line) {
+    String name = callee instanceof CompiledFunction
+        ? ((CompiledFunction) callee).traceName()
+        : callee.toString();
+    error.addFrame(name + "()", line);
+    return error;
+  }
+
+  /**
+   * Get a property of an instance.
+   * 
+   * @param object
+   * @param name
+   * @param line   line of the property
+   * @return
+   */
+  static Object get(Object object, String name, int line) {
+    if (object instanceof CompiledClass.Instance)
+      return ((CompiledClass.Instance) object).get(name, line);
+    throw error(line, "Only instances have properties.");
+  }
+
+  /**
+   * Check the object of a field assignment, before the value is evaluated.
+   * 
+   * @param object
+   * @param line   line of the field
+   * @return the instance
+   */
+  static CompiledClass.Instance instance(Object object, int line) {
+    if (object instanceof CompiledClass.Instance)
+      return (CompiledClass.Instance) object;
+    throw error(line, "Only instances have fields.");
+  }
+
+  /**
+   * Assign a field of an instance.
+   * 
+   * @param instance
+   * @param name
+   * @param value
+   * @return the value
+   */
+  static Object set(CompiledClass.Instance instance, String name, Object value) {
+    instance.set(name, value);
+    return value;
+  }
+
+  /**
+   * Find what a method call calls, before the arguments are evaluated.
+   * The method isn't bound to the instance, {@code callMethod()} passes it.
+   * 
+   * @param object
+   * @param name
+   * @param line   line of the method name
+   * @return the method, or the value of the field shadowing it
+   */
+  static Object method(Object object, String name, int line) {
+    if (!(object instanceof CompiledClass.Instance))
+      throw error(line, "Only instances have properties.");
+
+    CompiledClass.Instance instance = (CompiledClass.Instance) object;
+    CompiledFunction method = instance.findMethod(name);
+    if (method != null)
+      return method;
+    return instance.get(name, line);
+  }
+
+  /**
+   * Find a method of the superclass.
+   * 
+   * @param superclass
+   * @param name
+   * @param line       line of the method name
+   * @return the method, not bound
+   */
+  static CompiledFunction superMethod(Object superclass, String name, int line) {
+    CompiledFunction method = ((CompiledClass) superclass).findMethod(name);
+    if (method == null)
+      throw error(line, "Undefined property '" + name + "'.");
+    return method;
+  }
+
+  /**
+   * Bind a method found with {@code superMethod()}.
+   * 
+   * @param method
+   * @param self
+   * @return
+   */
+  static Object bind(CompiledFunction method, Object self) {
+    return new CompiledFunction.Bound(method, self);
+  }
+
+  /**
+   * Call what {@code method()} found, passing the instance to a method.
+   * 
+   * @param self      the instance
+   * @param target    the method or field value
+   * @param arguments
+   * @param line      line of the call
+   * @return
+   */
+  static Object callMethod(Object self, Object target, Object[] arguments, int line) {
+    if (!isMethod(target))
+      return call(target, arguments, line);
+
+    CompiledFunction method = (CompiledFunction) target;
+    checkArity(method.arity, arguments.length, line);
+    try {
+      return method.invoke(self, arguments);
+    } catch (RuntimeError error) {
+      throw frame(error, target, line);
+    }
+  }
+
+  static Object callMethod0(Object self, Object target, int line) {
+    if (!isMethod(target) || ((CompiledFunction) target).arity != 0)
+      return callMethod(self, target, new Object[0], line);
+    try {
+      return ((CompiledFunction) target).invoke0(self);
+    } catch (RuntimeError error) {
+      throw frame(error, target, line);
+    }
+  }
+
+  static Object callMethod1(Object self, Object target, Object a, int line) {
+    if (!isMethod(target) || ((CompiledFunction) target).arity != 1)
+      return callMethod(self, target, new Object[] { a }, line);
+    try {
+      return ((CompiledFunction) target).invoke1(self, a);
+    } catch (RuntimeError error) {
+      throw frame(error, target, line);
+    }
+  }
+
+  static Object callMethod2(Object self, Object target, Object a, Object b, int line) {
+    if (!isMethod(target) || ((CompiledFunction) target).arity != 2)
+      return callMethod(self, target, new Object[] { a, b }, line);
+    try {
+      return ((CompiledFunction) target).invoke2(self, a, b);
+    } catch (RuntimeError error) {
+      throw frame(error, target, line);
+    }
+  }
+
+  static Object callMethod3(Object self, Object target, Object a, Object b, Object c, int line) {
+    if (!isMethod(target) || ((CompiledFunction) target).arity != 3)
+      return callMethod(self, target, new Object[] { a, b, c }, line);
+    try {
+      return ((CompiledFunction) target).invoke3(self, a, b, c);
+    } catch (RuntimeError error) {
+      throw frame(error, target, line);
+    }
+  }
+
+  /**
+   * Check whether {@code method()} found a method rather than a field.
+   * 
+   * @param target
+   * @return {@code boolean}
+   */
+  private static boolean isMethod(Object target) {
+    return target instanceof CompiledFunction && ((CompiledFunction) target).isMethod;
+  }
+
+  /**
+   * Check the superclass of a class.
+   * 
+   * @param superclass
+   * @param line       line of the superclass name
+   * @return the superclass
+   */
+  static CompiledClass superclass(Object superclass, int line) {
+    if (superclass instanceof CompiledClass)
+      return (CompiledClass) superclass;
+    throw error(line, "Superclass must be a class.");
+  }
+}
@@ -0,0 +1,132 @@
+// ConstantFolding.java
+// Pass that evaluates operators on literals ahead of time.
+
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+class ConstantFolding extends AstRewriter implements Pass {
+  // Marks an operation that must be left for the runtime, e.g. to report an error
+  private static final Object NOT_FOLDED = new Object();
+
+  @Override
+  public String name() {
+    return "constant-folding";
+  }
+
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    return rewrite(statements);
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr.Binary binary = (Expr.Binary) super.visitBinaryExpr(expr);
+    Expr.Literal left = literal(binary.left);
+    Expr.Literal right = literal(binary.right);
+    if (left == null || right == null)
+      return binary;
+
+    Object value = fold(binary.operator.type, left.value, right.value);
+    if (value == NOT_FOLDED)
+      return binary;
+    return new Expr.Literal(value);
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    Expr.Unary unary = (Expr.Unary) super.visitUnaryExpr(expr);
+    Expr.Literal right = literal(unary.right);
+    if (right == null)
+      return unary;
+
+    switch (unary.operator.type) {
+      case BANG:
+        return new Expr.Literal(!Interpreter.isTruthy(right.value));
+      case MINUS:
+        if (right.value instanceof Double)
+          return new Expr.Literal(-(double) right.value);
+        return unary;
+      default:
+        return unary;
+    }
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    Expr.Logical logical = (Expr.Logical) super.visitLogicalExpr(expr);
+    Expr.Literal left = literal(logical.left);
+    if (left == null)
+      return logical;
+
+    // The left operand decides whether the right one is the result
+    boolean truthy = Interpreter.isTruthy(left.value);
+    if (logical.operator.type == TokenType.OR)
+      return truthy ? left : logical.right;
+    return truthy ? logical.right : left;
+  }
+
+  /**
+   * Get the literal an expression stands for, looking through parentheses.
+   * 
+   * @param expr
+   * @return the literal, or {@code null} if the expression isn't constant
+   */
+  private Expr.Literal literal(Expr expr) {
+    while (expr instanceof Expr.Grouping) {
+      expr = ((Expr.Grouping) expr).expression;
+    }
+    if (expr instanceof Expr.Literal)
+      return (Expr.Literal) expr;
+    return null;
+  }
+
+  /**
+   * Apply a binary operator the same way the interpreter does.
+   * 
+   * @param operator
+   * @param left
+   * @param right
+   * @return the result, or {@code NOT_FOLDED} if the operands are invalid
+   */
+  private Object fold(TokenType operator, Object left, Object right) {
+    switch (operator) {
+      case BANG_EQUAL:
+        return !Interpreter.isEqual(left, right);
+      case EQUAL_EQUAL:
+        return Interpreter.isEqual(left, right);
+      case PLUS:
+        if (left instanceof String && right instanceof String)
+          return Interner.intern((String) left + (String) right);
+        break;
+      default:
+        break;
+    }
+
+    if (!(left instanceof Double) || !(right instanceof Double))
+      return NOT_FOLDED;
+    double a = (double) left;
+    double b = (double) right;
+
+    switch (operator) {
+      case GREATER:
+        return a > b;
+      case GREATER_EQUAL:
+        return a >= b;
+      case LESS:
+        return a < b;
+      case LESS_EQUAL:
+        return a <= b;
+      case MINUS:
+        return a - b;
+      case PLUS:
+        return a + b;
+      case SLASH:
+        return a / b;
+      case STAR:
+        return a * b;
+      default:
+        return NOT_FOLDED;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+// DeadCodeElimination.java
+// Pass that removes statements which can never run.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class DeadCodeElimination extends AstRewriter implements Pass {
+  @Override
+  public String name() {
+    return "dead-code";
+  }
+
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    return rewrite(statements);
+  }
+
+  /**
+   * Rewrite a list of statements, dropping removed statements and everything
+   * after a return.
+   */
+  @Override
+  List<Stmt> rewrite(List<Stmt> statements) {
+    List<Stmt> rewritten = super.rewrite(statements);
+    List<Stmt> result = new ArrayList<>(rewritten.size());
+    for (Stmt statement : rewritten) {
+      if (statement == null)
+        continue;
+      result.add(statement);
+      if (statement instanceof Stmt.Return)
+        break;
+    }
+
+    if (result.equals(statements))
+      return statements;
+    return result;
+  }
+
+  /**
+   * Rewrite a statement that is not in a list, where it can't be dropped.
+   * 
+   * @param stmt
+   * @return the statement, or an empty block if it was removed
+   */
+  private Stmt rewriteSingle(Stmt stmt) {
+    Stmt rewritten = rewrite(stmt);
+    if (rewritten == null && stmt != null)
+      return new Stmt.Block(new ArrayList<>());
+    return rewritten;
+  }
+
+  @Override
+  public Stmt visitForStmt(Stmt.For stmt) {
+    Stmt initializer = rewrite(stmt.initializer);
+    Expr condition = rewrite(stmt.condition);
+
+    // Only the initializer runs, still in its own scope
+    if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+      if (initializer == null)
+        return null;
+      return new Stmt.Block(Arrays.asList(initializer));
+    }
+
+    Expr increment = rewrite(stmt.increment);
+    Stmt body = rewriteSingle(stmt.body);
+    if (initializer == stmt.initializer && condition == stmt.condition
+        && increment == stmt.increment && body == stmt.body)
+      return stmt;
+    return new Stmt.For(initializer, condition, increment, body);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    Expr condition = rewrite(stmt.condition);
+    Stmt thenBranch = rewriteSingle(stmt.thenBranch);
+    Stmt elseBranch = rewriteSingle(stmt.elseBranch);
+
+    // Only the branch that is taken is kept, or nothing at all
+    if (condition instanceof Expr.Literal) {
+      if (Interpreter.isTruthy(((Expr.Literal) condition).value))
+        return thenBranch;
+      return elseBranch;
+    }
+
+    if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch)
+      return stmt;
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Expr condition = rewrite(stmt.condition);
+    if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value))
+      return null;
+
+    Stmt body = rewriteSingle(stmt.body);
+    if (condition == stmt.condition && body == stmt.body)
+      return stmt;
+    return new Stmt.While(condition, body);
+  }
+}
@@ -0,0 +1,45 @@
+// Diagnostic.java
+// A syntax or resolution error collected instead of printed.
+
+package com.craftinginterpreters.lox;
+
+public class Diagnostic {
+  public final int line;
+  // Where on the line, such as " at 'x'", or empty
+  public final String where;
+  public final String message;
+
+  /**
+   * Initialize a diagnostic.
+   * 
+   * @param line    line number where the error occurred
+   * @param where   where the error occurred on the line
+   * @param message message to the user
+   */
+  Diagnostic(int line, String where, String message) {
+    this.line = line;
+    this.where = where;
+    this.message = message;
+  }
+
+  /**
+   * Make the diagnostic of an error at a token.
+   * 
+   * @param token   token where the error occurred
+   * @param message message to the user
+   * @return {@code Diagnostic}
+   */
+  static Diagnostic at(Token token, String message) {
+    if (token.type == TokenType.EOF)
+      return new Diagnostic(token.line, " at end", message);
+    return new Diagnostic(token.line, " at '" + token.lexeme() + "'", message);
+  }
+
+  /**
+   * Format the diagnostic the way errors are printed.
+   */
+  @Override
+  public String toString() {
+    return "[line " + line + "] Error" + where + ": " + message;
+  }
+}
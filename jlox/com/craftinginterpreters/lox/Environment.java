@@ -36,15 +36,15 @@ class Environment {
    */
   Object get(Token name) {
     // Find in current environment
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+    if (values.containsKey(name.lexeme())) {
+      return values.get(name.lexeme());
     }
 
     // Find in enclosing environments
     if (enclosing != null)
       return enclosing.get(name);
 
-    throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
   }
 
   /**
@@ -55,8 +55,8 @@ class Environment {
    */
   void assign(Token name, Object value) {
     // Assign to the current environment
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
+    if (values.containsKey(name.lexeme())) {
+      values.put(name.lexeme(), value);
       return;
     }
 
@@ -67,7 +67,7 @@ class Environment {
       return;
     }
 
-    throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
   }
 
   /**
@@ -115,6 +115,6 @@ class Environment {
    * @param value
    */
   void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+    ancestor(distance).values.put(name.lexeme(), value);
   }
 }
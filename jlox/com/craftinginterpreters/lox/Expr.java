@@ -3,22 +3,54 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 
 abstract class Expr {
+  static final int ASSIGN = 0;
+  static final int BINARY = 1;
+  static final int CALL = 2;
+  static final int COMPARE_CONSTANT = 3;
+  static final int GET = 4;
+  static final int GROUPING = 5;
+  static final int HOISTED = 6;
+  static final int INCREMENT = 7;
+  static final int INLINE_ARGUMENT = 8;
+  static final int INVOKE = 9;
+  static final int LITERAL = 10;
+  static final int LOGICAL = 11;
+  static final int SET = 12;
+  static final int SUPER = 13;
+  static final int THIS = 14;
+  static final int THIS_GET = 15;
+  static final int UNARY = 16;
+  static final int VARIABLE = 17;
+
+  final int kind;
+
+  Expr(int kind) {
+    this.kind = kind;
+  }
+
   interface Visitor<R> {
     R visitAssignExpr(Assign expr);
     R visitBinaryExpr(Binary expr);
     R visitCallExpr(Call expr);
+    R visitCompareConstantExpr(CompareConstant expr);
     R visitGetExpr(Get expr);
     R visitGroupingExpr(Grouping expr);
+    R visitHoistedExpr(Hoisted expr);
+    R visitIncrementExpr(Increment expr);
+    R visitInlineArgumentExpr(InlineArgument expr);
+    R visitInvokeExpr(Invoke expr);
     R visitLiteralExpr(Literal expr);
     R visitLogicalExpr(Logical expr);
     R visitSetExpr(Set expr);
     R visitSuperExpr(Super expr);
     R visitThisExpr(This expr);
+    R visitThisGetExpr(ThisGet expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
   }
   static class Assign extends Expr {
     Assign(Token name, Expr value) {
+      super(ASSIGN);
       this.name = name;
       this.value = value;
     }
@@ -28,11 +60,18 @@ abstract class Expr {
       return visitor.visitAssignExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitAssignExpr(this);
+    }
+
     final Token name;
     final Expr value;
+    int depth = -1;
   }
   static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -43,12 +82,20 @@ abstract class Expr {
       return visitor.visitBinaryExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitBinaryExpr(this);
+    }
+
     final Expr left;
     final Token operator;
     final Expr right;
+    int seen = 0;
+    int operands = 0;
   }
   static class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments) {
+      super(CALL);
       this.callee = callee;
       this.paren = paren;
       this.arguments = arguments;
@@ -59,12 +106,42 @@ abstract class Expr {
       return visitor.visitCallExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitCallExpr(this);
+    }
+
     final Expr callee;
     final Token paren;
     final List<Expr> arguments;
+    CallSite site = new CallSite();
+  }
+  static class CompareConstant extends Expr {
+    CompareConstant(Token name, Token operator, double constant) {
+      super(COMPARE_CONSTANT);
+      this.name = name;
+      this.operator = operator;
+      this.constant = constant;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitCompareConstantExpr(this);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitCompareConstantExpr(this);
+    }
+
+    final Token name;
+    final Token operator;
+    final double constant;
+    int depth = -1;
   }
   static class Get extends Expr {
     Get(Expr object, Token name) {
+      super(GET);
       this.object = object;
       this.name = name;
     }
@@ -74,11 +151,17 @@ abstract class Expr {
       return visitor.visitGetExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitGetExpr(this);
+    }
+
     final Expr object;
     final Token name;
   }
   static class Grouping extends Expr {
     Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -87,10 +170,105 @@ abstract class Expr {
       return visitor.visitGroupingExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitGroupingExpr(this);
+    }
+
+    final Expr expression;
+  }
+  static class Hoisted extends Expr {
+    Hoisted(Expr expression, int index) {
+      super(HOISTED);
+      this.expression = expression;
+      this.index = index;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitHoistedExpr(this);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitHoistedExpr(this);
+    }
+
     final Expr expression;
+    final int index;
+    Object[] values = null;
+  }
+  static class Increment extends Expr {
+    Increment(Token name, Token operator, double delta) {
+      super(INCREMENT);
+      this.name = name;
+      this.operator = operator;
+      this.delta = delta;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitIncrementExpr(this);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitIncrementExpr(this);
+    }
+
+    final Token name;
+    final Token operator;
+    final double delta;
+    int depth = -1;
+  }
+  static class InlineArgument extends Expr {
+    InlineArgument(Token name, int index) {
+      super(INLINE_ARGUMENT);
+      this.name = name;
+      this.index = index;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitInlineArgumentExpr(this);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitInlineArgumentExpr(this);
+    }
+
+    final Token name;
+    final int index;
+  }
+  static class Invoke extends Expr {
+    Invoke(Expr object, Token name, Token paren, List<Expr> arguments) {
+      super(INVOKE);
+      this.object = object;
+      this.name = name;
+      this.paren = paren;
+      this.arguments = arguments;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitInvokeExpr(this);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitInvokeExpr(this);
+    }
+
+    final Expr object;
+    final Token name;
+    final Token paren;
+    final List<Expr> arguments;
+    CallSite site = new CallSite();
   }
   static class Literal extends Expr {
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
 
@@ -99,10 +277,16 @@ abstract class Expr {
       return visitor.visitLiteralExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitLiteralExpr(this);
+    }
+
     final Object value;
   }
   static class Logical extends Expr {
     Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -113,12 +297,18 @@ abstract class Expr {
       return visitor.visitLogicalExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitLogicalExpr(this);
+    }
+
     final Expr left;
     final Token operator;
     final Expr right;
   }
   static class Set extends Expr {
     Set(Expr object, Token name, Expr value) {
+      super(SET);
       this.object = object;
       this.name = name;
       this.value = value;
@@ -129,12 +319,18 @@ abstract class Expr {
       return visitor.visitSetExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitSetExpr(this);
+    }
+
     final Expr object;
     final Token name;
     final Expr value;
   }
   static class Super extends Expr {
     Super(Token keyword, Token method) {
+      super(SUPER);
       this.keyword = keyword;
       this.method = method;
     }
@@ -144,11 +340,18 @@ abstract class Expr {
       return visitor.visitSuperExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitSuperExpr(this);
+    }
+
     final Token keyword;
     final Token method;
+    int depth = -1;
   }
   static class This extends Expr {
     This(Token keyword) {
+      super(THIS);
       this.keyword = keyword;
     }
 
@@ -157,10 +360,38 @@ abstract class Expr {
       return visitor.visitThisExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitThisExpr(this);
+    }
+
     final Token keyword;
+    int depth = -1;
+  }
+  static class ThisGet extends Expr {
+    ThisGet(Token keyword, Token name) {
+      super(THIS_GET);
+      this.keyword = keyword;
+      this.name = name;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitThisGetExpr(this);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitThisGetExpr(this);
+    }
+
+    final Token keyword;
+    final Token name;
+    int depth = -1;
   }
   static class Unary extends Expr {
     Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -170,11 +401,18 @@ abstract class Expr {
       return visitor.visitUnaryExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitUnaryExpr(this);
+    }
+
     final Token operator;
     final Expr right;
+    int operands = 0;
   }
   static class Variable extends Expr {
     Variable(Token name) {
+      super(VARIABLE);
       this.name = name;
     }
 
@@ -183,8 +421,16 @@ abstract class Expr {
       return visitor.visitVariableExpr(this);
     }
 
+    @Override
+    Object evaluate(Interpreter interpreter) {
+      return interpreter.visitVariableExpr(this);
+    }
+
     final Token name;
+    int depth = -1;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
+
+  abstract Object evaluate(Interpreter interpreter);
 }
@@ -0,0 +1,23 @@
+// GroupingElimination.java
+// Pass that drops parentheses, which only matter to the parser.
+
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+class GroupingElimination extends AstRewriter implements Pass {
+  @Override
+  public String name() {
+    return "grouping";
+  }
+
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    return rewrite(statements);
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    return rewrite(expr.expression);
+  }
+}
@@ -0,0 +1,393 @@
+// IncrementalParser.java
+// Keeps the diagnostics of a source up to date as it is edited.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+public class IncrementalParser {
+  // Segments per chunk when chunks are rebuilt
+  private static final int CHUNK = 128;
+  // Phases of the front end, errors are listed by phase like a whole run
+  private static final int SCAN = 0;
+  private static final int PARSE = 1;
+  private static final int RESOLVE = 2;
+  // Each top level declaration is scanned, parsed and resolved on its own.
+  // The segments are grouped in chunks that know their totals, so finding
+  // an edit and collecting diagnostics can skip whole chunks.
+  private final List<Chunk> chunks = new ArrayList<>();
+  // Receives the resolved variables, the program is never run
+  private final Interpreter interpreter = new Interpreter();
+
+  /**
+   * A top level declaration with the whitespace and comments before it.
+   * The last segment also holds what follows the last declaration, so its
+   * end of file is the one of the source.
+   */
+  private static class Segment {
+    final String text;
+    // Count of line breaks in the text
+    final int lines;
+    // Errors of each phase with lines counted from the start of the segment
+    final List<List<Diagnostic>> errors;
+    // Whether the declaration starts with "else", which can continue the
+    // statement before
+    final boolean startsWithElse;
+
+    Segment(String text, List<List<Diagnostic>> errors, boolean startsWithElse) {
+      this.text = text;
+      this.lines = lineBreaks(text);
+      this.errors = errors;
+      this.startsWithElse = startsWithElse;
+    }
+  }
+
+  /**
+   * Consecutive segments with their total length, line breaks and errors.
+   */
+  private static class Chunk {
+    final List<Segment> segments;
+    final int length;
+    final int lines;
+    // Count of errors of each phase
+    final int[] errors = new int[RESOLVE + 1];
+
+    Chunk(List<Segment> segments) {
+      this.segments = segments;
+      int length = 0;
+      int lines = 0;
+      for (Segment segment : segments) {
+        length += segment.text.length();
+        lines += segment.lines;
+        for (int phase = SCAN; phase <= RESOLVE; phase++)
+          errors[phase] += segment.errors.get(phase).size();
+      }
+      this.length = length;
+      this.lines = lines;
+    }
+  }
+
+  /**
+   * Consecutive chunks taken out to be edited, as one list of segments.
+   */
+  private class Window {
+    final List<Segment> segments = new ArrayList<>();
+    int firstChunk;
+    int lastChunk;
+    // Offset of the first segment in the source
+    int start;
+
+    Window(int chunk, int start) {
+      this.firstChunk = chunk;
+      this.lastChunk = chunk;
+      this.start = start;
+      segments.addAll(chunks.get(chunk).segments);
+    }
+
+    /**
+     * Take in the chunk before the window.
+     * 
+     * @return count of segments added in front
+     */
+    int growBack() {
+      if (firstChunk == 0)
+        return 0;
+      Chunk chunk = chunks.get(--firstChunk);
+      segments.addAll(0, chunk.segments);
+      start -= chunk.length;
+      return chunk.segments.size();
+    }
+
+    /**
+     * Get a segment, taking in the chunk after the window if needed.
+     * 
+     * @param index
+     * @return {@code Segment}
+     */
+    Segment get(int index) {
+      if (index == segments.size())
+        segments.addAll(chunks.get(++lastChunk).segments);
+      return segments.get(index);
+    }
+
+    /**
+     * Check if a segment is the last one of the source.
+     * 
+     * @param index
+     * @return {@code boolean}
+     */
+    boolean isLast(int index) {
+      return index == segments.size() - 1 && lastChunk == chunks.size() - 1;
+    }
+
+    /**
+     * Put the segments back in place of the chunks they were taken from.
+     */
+    void store() {
+      chunks.subList(firstChunk, lastChunk + 1).clear();
+      chunks.addAll(firstChunk, chunk(segments));
+    }
+  }
+
+  /**
+   * Scan, parse and resolve a whole source.
+   * 
+   * @param source
+   */
+  public IncrementalParser(String source) {
+    chunks.addAll(chunk(split(source, true)));
+  }
+
+  /**
+   * Replace part of the source and update the diagnostics.
+   * Only the declarations around the edit are scanned, parsed and resolved
+   * again. Globals are looked up at runtime, so resolving a declaration
+   * doesn't depend on the others. The region grows when the edit changes
+   * where declarations end, e.g. with an unclosed brace or string.
+   * 
+   * @param offset start of the replaced text
+   * @param length length of the replaced text
+   * @param text   text replacing it
+   * @return the diagnostics of the whole source
+   * @throws IndexOutOfBoundsException If the replaced text is outside the
+   *                                   source
+   */
+  public List<Diagnostic> edit(int offset, int length, String text) {
+    if (offset < 0 || length < 0 || offset + length > length())
+      throw new IndexOutOfBoundsException("Edit outside of the source.");
+
+    int chunk = 0;
+    int start = 0;
+    while (chunk < chunks.size() - 1 && start + chunks.get(chunk).length < offset) {
+      start += chunks.get(chunk).length;
+      chunk++;
+    }
+    Window window = new Window(chunk, start);
+
+    // Find the segments holding the ends of the replaced text
+    int first = 0;
+    while (!window.isLast(first) && start + window.get(first).text.length() < offset) {
+      start += window.get(first).text.length();
+      first++;
+    }
+    // The declaration before may continue with what the edit brings
+    if (first == 0)
+      first += window.growBack();
+    if (first > 0) {
+      first--;
+      start -= window.get(first).text.length();
+    }
+
+    int last = first;
+    int end = start + window.get(first).text.length();
+    while (end < offset + length) {
+      last++;
+      end += window.get(last).text.length();
+    }
+
+    StringBuilder region = new StringBuilder();
+    for (int i = first; i <= last; i++)
+      region.append(window.get(i).text);
+    region.replace(offset - start, offset - start + length, text);
+
+    List<Segment> replacement;
+    for (;;) {
+      boolean atEnd = window.isLast(last);
+      replacement = split(region.toString(), atEnd);
+      if (replacement != null && !replacement.isEmpty() && (atEnd || !window.get(last + 1).startsWithElse))
+        break;
+
+      if (replacement != null && replacement.isEmpty() && (first > 0 || window.firstChunk > 0)) {
+        // Nothing is left of the region, the "else" may now follow the
+        // declaration before it
+        if (first == 0) {
+          int added = window.growBack();
+          first += added;
+          last += added;
+        }
+        region.insert(0, window.get(--first).text);
+        continue;
+      }
+
+      // Take in twice as many declarations, so an edit reaching the end of
+      // the source only rescans it a few times
+      int more = last - first + 1;
+      for (int i = 0; i < more && !window.isLast(last); i++)
+        region.append(window.get(++last).text);
+    }
+
+    window.segments.subList(first, last + 1).clear();
+    window.segments.addAll(first, replacement);
+    window.store();
+    return diagnostics();
+  }
+
+  /**
+   * Get the diagnostics of the whole source, in the order a run reports
+   * them: scanning errors, then syntax errors and, only if there are none,
+   * resolution errors.
+   * 
+   * @return {@code List<Diagnostic>}
+   */
+  public List<Diagnostic> diagnostics() {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    collect(SCAN, diagnostics);
+    collect(PARSE, diagnostics);
+    if (diagnostics.isEmpty())
+      collect(RESOLVE, diagnostics);
+    return diagnostics;
+  }
+
+  /**
+   * Add the errors of one phase with their line in the source.
+   * 
+   * @param phase
+   * @param diagnostics
+   */
+  private void collect(int phase, List<Diagnostic> diagnostics) {
+    int line = 1;
+    for (Chunk chunk : chunks) {
+      if (chunk.errors[phase] == 0) {
+        line += chunk.lines;
+        continue;
+      }
+      for (Segment segment : chunk.segments) {
+        for (Diagnostic error : segment.errors.get(phase))
+          diagnostics.add(new Diagnostic(line + error.line - 1, error.where, error.message));
+        line += segment.lines;
+      }
+    }
+  }
+
+  /**
+   * Get the current source.
+   * 
+   * @return {@code String}
+   */
+  public String source() {
+    StringBuilder source = new StringBuilder();
+    for (Chunk chunk : chunks) {
+      for (Segment segment : chunk.segments)
+        source.append(segment.text);
+    }
+    return source.toString();
+  }
+
+  /**
+   * Get the length of the current source.
+   * 
+   * @return {@code int}
+   */
+  public int length() {
+    int length = 0;
+    for (Chunk chunk : chunks)
+      length += chunk.length;
+    return length;
+  }
+
+  /**
+   * Group segments into chunks of about the same size.
+   * 
+   * @param segments
+   * @return {@code List<Chunk>}
+   */
+  private static List<Chunk> chunk(List<Segment> segments) {
+    int count = (segments.size() + CHUNK - 1) / CHUNK;
+    List<Chunk> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int from = (int) ((long) segments.size() * i / count);
+      int to = (int) ((long) segments.size() * (i + 1) / count);
+      result.add(new Chunk(new ArrayList<>(segments.subList(from, to))));
+    }
+    return result;
+  }
+
+  /**
+   * Split part of the source into declarations and check each of them.
+   * Unless the part goes to the end of the source, it has to end where a
+   * declaration ends and the declaration after must not depend on it.
+   * 
+   * @param text  part of the source made of whole segments
+   * @param atEnd whether the part goes to the end of the source
+   * @return the segments, or {@code null} if the part has to be extended
+   */
+  private List<Segment> split(String text, boolean atEnd) {
+    List<Token> tokens = new ArrayList<>();
+    List<Integer> ends = new ArrayList<>();
+    boolean[] dangling = new boolean[1];
+    List<Diagnostic> errors = Lox.collectErrors(() -> {
+      tokens.addAll(new Scanner(text).scanTokens());
+      Parser parser = new Parser(tokens);
+      while (parser.hasNext()) {
+        Stmt statement = parser.next();
+        Token previous = tokens.get(parser.position() - 1);
+        ends.add(previous.start + previous.length);
+        // Recovering from an error stopped at the end of the part instead
+        // of at a ";" or a statement keyword
+        dangling[0] = statement == null && previous.type != SEMICOLON && !parser.hasNext();
+      }
+    });
+
+    if (!atEnd) {
+      int last = ends.isEmpty() ? 0 : ends.get(ends.size() - 1);
+      if (last < text.length() || dangling[0])
+        return null;
+      for (Diagnostic error : errors) {
+        if (error.where.equals(" at end") || error.message.startsWith("Unterminated"))
+          return null;
+      }
+    }
+
+    // At the end of the source, the last declaration takes what follows it
+    if (atEnd && ends.isEmpty())
+      ends.add(text.length());
+    if (atEnd)
+      ends.set(ends.size() - 1, text.length());
+
+    List<Segment> result = new ArrayList<>();
+    int start = 0;
+    for (int end : ends) {
+      result.add(check(text.substring(start, end)));
+      start = end;
+    }
+    return result;
+  }
+
+  /**
+   * Scan, parse and resolve one declaration.
+   * 
+   * @param text declaration with the whitespace and comments before it
+   * @return {@code Segment}
+   */
+  private Segment check(String text) {
+    List<Token> tokens = new ArrayList<>();
+    List<Stmt> statements = new ArrayList<>();
+    List<List<Diagnostic>> errors = new ArrayList<>();
+    errors.add(Lox.collectErrors(() -> tokens.addAll(new Scanner(text).scanTokens())));
+    errors.add(Lox.collectErrors(() -> statements.addAll(new Parser(tokens).parse())));
+
+    // Like a whole program, a declaration with syntax errors isn't resolved
+    if (errors.get(SCAN).isEmpty() && errors.get(PARSE).isEmpty()) {
+      errors.add(Lox.collectErrors(() -> new Resolver(interpreter).resolve(statements)));
+    } else {
+      errors.add(new ArrayList<>());
+    }
+    return new Segment(text, errors, tokens.get(0).type == ELSE);
+  }
+
+  /**
+   * Count the line breaks in a text.
+   * 
+   * @param text
+   * @return {@code int}
+   */
+  private static int lineBreaks(String text) {
+    int count = 0;
+    for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1))
+      count++;
+    return count;
+  }
+}
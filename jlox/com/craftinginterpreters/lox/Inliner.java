@@ -0,0 +1,195 @@
+// Inliner.java
+// Splices the body of a small function into its call site.
+
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+class Inliner extends AstRewriter {
+  // Largest body, in expression nodes, that is inlined
+  private static final int MAX_SIZE = 16;
+
+  // Sentinel class to unwind the inliner
+  private static class NotInlinable extends RuntimeException {
+    NotInlinable() {
+      super(null, null, false, false);
+    }
+  }
+
+  private final List<Token> params;
+  // Arguments are shifted by one when the receiver is passed first
+  private final int offset;
+  // Environments that no longer exist once inlined: parameters and "this"
+  private final int shift;
+  private int size = 0;
+
+  /**
+   * Initialize the inliner for a function's parameters.
+   * 
+   * @param params
+   * @param isMethod whether the receiver is passed as the first argument
+   */
+  private Inliner(List<Token> params, boolean isMethod) {
+    this.params = params;
+    this.offset = isMethod ? 1 : 0;
+    this.shift = isMethod ? 2 : 1;
+  }
+
+  /**
+   * Build the inlined body of a function.
+   * Only small non-recursive functions whose body is a single return are
+   * inlined. Parameters become argument slots and the remaining variables
+   * are looked up from the function's closure. A deferred body is compiled
+   * first, a site can reach the threshold before the first call when its
+   * count comes from a profile.
+   * 
+   * @param function
+   * @param isMethod    whether the receiver is passed as the first argument
+   * @param interpreter interpreter that receives the resolved variables
+   * @return inlined body, or {@code null} if the function can't be inlined
+   */
+  static Expr inline(LoxFunction function, boolean isMethod, Interpreter interpreter) {
+    if (function.isInitializer())
+      return null;
+
+    if (function.declaration().lazy != null)
+      LazyBody.compile(function.declaration(), interpreter);
+
+    List<Stmt> body = function.declaration().body;
+    if (body.size() != 1 || !(body.get(0) instanceof Stmt.Return))
+      return null;
+
+    Expr value = ((Stmt.Return) body.get(0)).value;
+    if (value == null)
+      return null;
+
+    try {
+      return new Inliner(function.declaration().params, isMethod).rewrite(value);
+    } catch (NotInlinable error) {
+      return null;
+    }
+  }
+
+  @Override
+  Expr rewrite(Expr expr) {
+    if (++size > MAX_SIZE)
+      throw new NotInlinable();
+    return super.rewrite(expr);
+  }
+
+  /**
+   * Get the argument slot of a parameter.
+   * 
+   * @param name
+   * @return
+   */
+  private Expr.InlineArgument argument(Token name) {
+    for (int i = 0; i < params.size(); i++) {
+      if (params.get(i).lexeme().equals(name.lexeme())) {
+        return new Expr.InlineArgument(name, i + offset);
+      }
+    }
+    throw new NotInlinable();
+  }
+
+  /**
+   * Get the depth of a variable once the inlined environments are gone.
+   * 
+   * @param depth
+   * @return
+   */
+  private int shifted(int depth) {
+    if (depth < 0)
+      return depth;
+    if (depth < shift)
+      throw new NotInlinable();
+    return depth - shift;
+  }
+
+  /**
+   * Check if a "this" at the given depth is the receiver argument.
+   * 
+   * @param depth
+   * @return {@code boolean}
+   */
+  private boolean isReceiver(int depth) {
+    return offset == 1 && depth == 1;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    if (expr.depth == 0)
+      return argument(expr.name);
+
+    Expr.Variable variable = new Expr.Variable(expr.name);
+    variable.depth = shifted(expr.depth);
+    return variable;
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    if (isReceiver(expr.depth))
+      return new Expr.InlineArgument(expr.keyword, 0);
+
+    Expr.This object = new Expr.This(expr.keyword);
+    object.depth = shifted(expr.depth);
+    return object;
+  }
+
+  @Override
+  public Expr visitThisGetExpr(Expr.ThisGet expr) {
+    if (isReceiver(expr.depth))
+      return new Expr.Get(new Expr.InlineArgument(expr.keyword, 0), expr.name);
+
+    Expr.ThisGet get = new Expr.ThisGet(expr.keyword, expr.name);
+    get.depth = shifted(expr.depth);
+    return get;
+  }
+
+  @Override
+  public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+    if (expr.depth == 0)
+      return new Expr.Binary(argument(expr.name), expr.operator, new Expr.Literal(expr.constant));
+
+    Expr.CompareConstant compare = new Expr.CompareConstant(expr.name, expr.operator, expr.constant);
+    compare.depth = shifted(expr.depth);
+    return compare;
+  }
+
+  // Calls could recurse and assignments would need the environments back.
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    throw new NotInlinable();
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    throw new NotInlinable();
+  }
+
+  @Override
+  public Expr visitIncrementExpr(Expr.Increment expr) {
+    throw new NotInlinable();
+  }
+
+  @Override
+  public Expr visitInvokeExpr(Expr.Invoke expr) {
+    throw new NotInlinable();
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    throw new NotInlinable();
+  }
+
+  @Override
+  public Expr visitSuperExpr(Expr.Super expr) {
+    throw new NotInlinable();
+  }
+
+  @Override
+  public Expr visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    throw new NotInlinable();
+  }
+}
@@ -0,0 +1,39 @@
+// Interner.java
+// Weak table of interned Lox strings, so equal strings are the same object.
+
+package com.craftinginterpreters.lox;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+class Interner {
+  // Intern every string so equal strings are the same object
+  static boolean enabled = false;
+  // Strings no longer used anywhere else are dropped from the table
+  private static final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+  /**
+   * Get the one copy of a string's text, if interning is on.
+   * Every string value is interned when it is created: literals by the
+   * scanner, concatenations and flattened ropes at runtime. So two interned
+   * strings are equal only if they are the same object.
+   * 
+   * @param string
+   * @return the interned copy, or the string itself if interning is off
+   */
+  static String intern(String string) {
+    if (!enabled)
+      return string;
+
+    synchronized (strings) {
+      WeakReference<String> reference = strings.get(string);
+      String interned = reference == null ? null : reference.get();
+      if (interned == null) {
+        strings.put(string, new WeakReference<>(string));
+        interned = string;
+      }
+      return interned;
+    }
+  }
+}
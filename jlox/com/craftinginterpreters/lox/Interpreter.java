@@ -4,6 +4,7 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,13 +12,26 @@ import java.util.Map;
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   final Environment globals = new Environment(); // The global scope
   private Environment environment = globals; // The current environment
-  private final Map<Expr, Integer> locals = new HashMap<>();
+  private Object[] inlineArguments = null; // Arguments of the inlined call
+  // Marks a hoisted expression not yet evaluated since entering its loop
+  private static final Object UNSET = new Object();
+  private final OutputSink out; // Where print writes to
+
+  /**
+   * Initialize the Interpreter printing to the standard output.
+   */
+  Interpreter() {
+    this(OutputSink.stdout());
+  }
 
   /**
    * Initialize the Interpreter with the global environment.
    * Define a native function (clock()) in the global environment.
+   * 
+   * @param out where print statements write to
    */
-  Interpreter() {
+  Interpreter(OutputSink out) {
+    this.out = out;
     globals.define("clock", new LoxCallable() {
       @Override
       public int arity() {
@@ -42,15 +56,43 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
    * @param statements
    */
   void interpret(List<Stmt> statements) {
+    try {
+      run(statements);
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * Execute statements without flushing the output afterwards, for programs
+   * run a piece at a time.
+   * 
+   * @param statements
+   * @return {@code false} if a runtime error was reported
+   */
+  boolean run(List<Stmt> statements) {
     try {
       for (Stmt statement : statements) {
         execute(statement);
       }
+      return true;
     } catch (RuntimeError error) {
+      // What was printed before the error comes first
+      out.flush();
       Lox.runtimeError(error);
+      return false;
     }
   }
 
+  /**
+   * Get where print statements write to.
+   * 
+   * @return
+   */
+  OutputSink output() {
+    return out;
+  }
+
   @Override
   public Object visitLiteralExpr(Expr.Literal expr) {
     return expr.value;
@@ -86,27 +128,36 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitSuperExpr(Expr.Super expr) {
-    int distance = locals.get(expr);
+    int distance = expr.depth;
     LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
 
     // Get "this" instance
     LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
 
-    LoxFunction method = superclass.findMethod(expr.method.lexeme);
+    LoxFunction method = superclass.findMethod(expr.method.lexeme());
 
     if (method == null) {
-      throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+      throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme() + "'.");
     }
     return method.bind(object);
   }
 
   @Override
   public Object visitThisExpr(Expr.This expr) {
-    return lookUpVariable(expr.keyword, expr);
+    return lookUpVariable(expr.keyword, expr.depth);
+  }
+
+  @Override
+  public Object visitThisGetExpr(Expr.ThisGet expr) {
+    LoxInstance object = (LoxInstance) environment.getAt(expr.depth, "this");
+    return object.get(expr.name);
   }
 
   @Override
   public Object visitUnaryExpr(Expr.Unary expr) {
+    if (expr.operands == TypeInference.NUMBER)
+      return evaluateNumber(expr);
+
     Object right = evaluate(expr.right);
 
     switch (expr.operator.type) {
@@ -123,25 +174,52 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitVariableExpr(Expr.Variable expr) {
-    return lookUpVariable(expr.name, expr);
+    return lookUpVariable(expr.name, expr.depth);
   }
 
   /**
    * Look up the variable using the distance information.
+   * A negative distance means the variable is global.
    * 
    * @param name
-   * @param expr
+   * @param distance
    * @return
    */
-  private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      return environment.getAt(distance, name.lexeme);
+  private Object lookUpVariable(Token name, int distance) {
+    if (distance >= 0) {
+      return environment.getAt(distance, name.lexeme());
     } else {
       return globals.get(name);
     }
   }
 
+  /**
+   * Evaluate a loop or if condition.
+   * Fused comparisons are tested directly without boxing the result.
+   * 
+   * @param condition
+   * @return {@code boolean}
+   */
+  private boolean test(Expr condition) {
+    if (condition.kind == Expr.COMPARE_CONSTANT) {
+      return compare((Expr.CompareConstant) condition);
+    }
+    return isTruthy(evaluate(condition));
+  }
+
+  /**
+   * Compare a variable against a number constant.
+   * 
+   * @param expr
+   * @return {@code boolean}
+   */
+  private boolean compare(Expr.CompareConstant expr) {
+    Object left = lookUpVariable(expr.name, expr.depth);
+    if (!(left instanceof Double))
+      throw new RuntimeError(expr.operator, "Operands must be numbers.");
+    return compare(expr.operator.type, (double) left, expr.constant);
+  }
+
   /**
    * Throw an error if the given operand is not a number.
    * 
@@ -174,7 +252,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
    * @param object
    * @return {@code boolean}
    */
-  private boolean isTruthy(Object object) {
+  static boolean isTruthy(Object object) {
     if (object == null)
       return false;
     if (object instanceof Boolean)
@@ -186,17 +264,24 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
    * Check if 2 objects are equal.
    * Because of similar behavior, Java's {@code equals()} will be used.
    * The only extra case is when either or both objects is null.
-   * If they are both null, they are equal and not otherwise.
+   * If they are both null, they are equal and not otherwise. Strings and
+   * ropes are compared by their text, or by identity once interned.
    * 
    * @param a
    * @param b
    * @return
    */
-  private boolean isEqual(Object a, Object b) {
-    if (a == null && b == null)
+  static boolean isEqual(Object a, Object b) {
+    if (a == b)
       return true;
     if (a == null)
       return false;
+    // Interned strings with the same text are the same object
+    if (Interner.enabled && a instanceof String && b instanceof String)
+      return false;
+    // A String doesn't know it can be equal to a Rope
+    if (b instanceof Rope)
+      return b.equals(a);
     return a.equals(b);
   }
 
@@ -210,13 +295,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     if (object == null)
       return "nil";
 
-    if (object instanceof Double) {
-      String text = object.toString();
-      if (text.endsWith(".0")) {
-        text = text.substring(0, text.length() - 2);
-      }
-      return text;
-    }
+    if (object instanceof Double)
+      return NumberFormatter.format((double) object);
 
     return object.toString();
   }
@@ -228,12 +308,57 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   /**
    * Sends the expression back into the interpreter's visitor implementation.
+   * Uses the node's direct dispatch instead of the {@code Visitor} interface.
    * 
    * @param expr expression to evaluate
    * @return
    */
   private Object evaluate(Expr expr) {
-    return expr.accept(this);
+    return expr.evaluate(this);
+  }
+
+  /**
+   * Evaluate an expression inferred to be a number.
+   * Arithmetic on inferred numbers is computed on primitive doubles, so the
+   * intermediate results are never boxed or checked.
+   * 
+   * @param expr expression to evaluate
+   * @return
+   */
+  private double evaluateNumber(Expr expr) {
+    switch (expr.kind) {
+      case Expr.LITERAL:
+        return (double) ((Expr.Literal) expr).value;
+      case Expr.GROUPING:
+        return evaluateNumber(((Expr.Grouping) expr).expression);
+      case Expr.BINARY: {
+        Expr.Binary binary = (Expr.Binary) expr;
+        if (binary.operands != TypeInference.NUMBER)
+          break;
+        switch (binary.operator.type) {
+          case MINUS:
+            return evaluateNumber(binary.left) - evaluateNumber(binary.right);
+          case PLUS:
+            return evaluateNumber(binary.left) + evaluateNumber(binary.right);
+          case SLASH:
+            return evaluateNumber(binary.left) / evaluateNumber(binary.right);
+          case STAR:
+            return evaluateNumber(binary.left) * evaluateNumber(binary.right);
+          default:
+            break;
+        }
+        break;
+      }
+      case Expr.UNARY: {
+        Expr.Unary unary = (Expr.Unary) expr;
+        if (unary.operands == TypeInference.NUMBER)
+          return -evaluateNumber(unary.right);
+        break;
+      }
+      default:
+        break;
+    }
+    return (double) evaluate(expr);
   }
 
   /**
@@ -242,17 +367,33 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
    * @param stmt
    */
   private void execute(Stmt stmt) {
-    stmt.accept(this);
+    stmt.execute(this);
   }
 
   /**
-   * Put the resolved expression along with where to find it on a map.
+   * Store the resolved depth in the expression so it can be found directly.
    * 
    * @param expr
    * @param depth
    */
   void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
+    switch (expr.kind) {
+      case Expr.ASSIGN:
+        ((Expr.Assign) expr).depth = depth;
+        break;
+      case Expr.SUPER:
+        ((Expr.Super) expr).depth = depth;
+        break;
+      case Expr.THIS:
+        ((Expr.This) expr).depth = depth;
+        break;
+      case Expr.VARIABLE:
+        ((Expr.Variable) expr).depth = depth;
+        break;
+      default:
+        // Only variable accesses are resolved
+        break;
+    }
   }
 
   /**
@@ -290,7 +431,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
       }
     }
-    environment.define(stmt.name.lexeme, null);
+    environment.define(stmt.name.lexeme(), null);
 
     if (stmt.superclass != null) {
       environment = new Environment(environment);
@@ -299,11 +440,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     Map<String, LoxFunction> methods = new HashMap<>();
     for (Stmt.Function method : stmt.methods) {
-      LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
-      methods.put(method.name.lexeme, function);
+      LoxFunction function = new LoxFunction(method, environment, method.name.lexeme().equals("init"));
+      methods.put(method.name.lexeme(), function);
     }
 
-    LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
+    LoxClass klass = new LoxClass(stmt.name.lexeme(), (LoxClass) superclass, methods);
 
     if (superclass != null) {
       environment = environment.enclosing;
@@ -319,16 +460,112 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    Environment previous = this.environment;
+    try {
+      // The initializer gets its own environment, shared by every iteration
+      if (stmt.initializer != null) {
+        this.environment = new Environment(previous);
+        execute(stmt.initializer);
+      }
+
+      // Hoisted expressions are computed again each time the loop is entered
+      if (stmt.hoisted != null) {
+        Arrays.fill(stmt.hoisted, UNSET);
+      }
+
+      if (stmt.counted && runCounted(stmt))
+        return null;
+
+      while (stmt.condition == null || test(stmt.condition)) {
+        execute(stmt.body);
+        if (stmt.increment != null)
+          evaluate(stmt.increment);
+      }
+    } finally {
+      this.environment = previous;
+    }
+    return null;
+  }
+
+  /**
+   * Run a counting loop with the induction variable kept as a primitive.
+   * The optimizer only marks loops whose body never assigns the variable, so
+   * the environment is only written to, once per iteration.
+   * 
+   * @param stmt
+   * @return {@code false} if the operands aren't numbers and the loop must
+   *         run normally instead
+   */
+  private boolean runCounted(Stmt.For stmt) {
+    Stmt.Var variable = (Stmt.Var) stmt.initializer;
+    Object start = environment.getAt(0, variable.name.lexeme());
+
+    TokenType operator;
+    Object end;
+    if (stmt.condition instanceof Expr.CompareConstant) {
+      Expr.CompareConstant compare = (Expr.CompareConstant) stmt.condition;
+      operator = compare.operator.type;
+      end = compare.constant;
+    } else {
+      // The bound is loop invariant so it is only evaluated once
+      Expr.Binary compare = (Expr.Binary) stmt.condition;
+      operator = compare.operator.type;
+      end = evaluate(compare.right);
+    }
+
+    if (!(start instanceof Double) || !(end instanceof Double))
+      return false;
+
+    Environment loop = environment;
+    String name = variable.name.lexeme();
+    double delta = ((Expr.Increment) stmt.increment).delta;
+    double bound = (double) end;
+    double i = (double) start;
+
+    while (compare(operator, i, bound)) {
+      execute(stmt.body);
+      i += delta;
+      loop.define(name, i);
+    }
+    return true;
+  }
+
+  /**
+   * Apply a comparison operator to two numbers.
+   * 
+   * @param operator
+   * @param left
+   * @param right
+   * @return {@code boolean}
+   */
+  private static boolean compare(TokenType operator, double left, double right) {
+    switch (operator) {
+      case GREATER:
+        return left > right;
+      case GREATER_EQUAL:
+        return left >= right;
+      case LESS:
+        return left < right;
+      case LESS_EQUAL:
+        return left <= right;
+      default:
+        // Unreachable
+        return false;
+    }
+  }
+
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
     LoxFunction function = new LoxFunction(stmt, environment, false);
-    environment.define(stmt.name.lexeme, function);
+    environment.define(stmt.name.lexeme(), function);
     return null;
   }
 
   @Override
   public Void visitIfStmt(Stmt.If stmt) {
-    if (isTruthy(evaluate(stmt.condition))) {
+    if (test(stmt.condition)) {
       execute(stmt.thenBranch);
     } else if (stmt.elseBranch != null) {
       execute(stmt.elseBranch);
@@ -339,7 +576,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Void visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    if (value instanceof Double) {
+      out.append((double) value);
+    } else {
+      out.append(stringify(value));
+    }
+    out.newline();
     return null;
   }
 
@@ -359,13 +601,13 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       value = evaluate(stmt.initializer);
     }
 
-    environment.define(stmt.name.lexeme, value);
+    environment.define(stmt.name.lexeme(), value);
     return null;
   }
 
   @Override
   public Void visitWhileStmt(Stmt.While stmt) {
-    while (isTruthy(evaluate(stmt.condition))) {
+    while (test(stmt.condition)) {
       execute(stmt.body);
     }
     return null;
@@ -375,9 +617,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   public Object visitAssignExpr(Expr.Assign expr) {
     Object value = evaluate(expr.value);
 
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      environment.assignAt(distance, expr.name, value);
+    if (expr.depth >= 0) {
+      environment.assignAt(expr.depth, expr.name, value);
     } else {
       globals.assign(expr.name, value);
     }
@@ -387,6 +628,21 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitBinaryExpr(Expr.Binary expr) {
+    // Operand types proven by type inference need no checks
+    if (expr.operands == TypeInference.NUMBER) {
+      switch (expr.operator.type) {
+        case GREATER:
+        case GREATER_EQUAL:
+        case LESS:
+        case LESS_EQUAL:
+          return compare(expr.operator.type, evaluateNumber(expr.left), evaluateNumber(expr.right));
+        default:
+          return evaluateNumber(expr);
+      }
+    }
+    if (expr.operands == TypeInference.STRING)
+      return Rope.concat(evaluate(expr.left), evaluate(expr.right));
+
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
 
@@ -411,12 +667,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         checkNumberOperands(expr.operator, left, right);
         return (double) left - (double) right;
       case PLUS:
-        if (left instanceof Double && right instanceof Double) {
+        // Check the profiled case first when only strings were seen
+        if (expr.seen != Profile.STRINGS && left instanceof Double && right instanceof Double) {
+          expr.seen |= Profile.NUMBERS;
           return (double) left + (double) right;
         }
         // Support string concatenation
-        if (left instanceof String && right instanceof String) {
-          return (String) left + (String) right;
+        if (Rope.isString(left) && Rope.isString(right)) {
+          expr.seen |= Profile.STRINGS;
+          return Rope.concat(left, right);
+        }
+        if (left instanceof Double && right instanceof Double) {
+          expr.seen |= Profile.NUMBERS;
+          return (double) left + (double) right;
         }
 
         throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
@@ -437,22 +700,197 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   public Object visitCallExpr(Expr.Call expr) {
     Object callee = evaluate(expr.callee);
 
-    List<Object> arguments = new ArrayList<>();
-    for (Expr argument : expr.arguments) {
-      arguments.add(evaluate(argument));
+    if (Lox.inline) {
+      Expr inlined = expr.site.profile(callee, false, this);
+      if (inlined != null) {
+        LoxFunction function = (LoxFunction) callee;
+        return callInlined(function.closure(), null, inlined, function, expr.paren, expr.arguments);
+      }
     }
 
+    return call(callee, expr.paren, expr.arguments);
+  }
+
+  /**
+   * Evaluate the arguments and the inlined body of a function.
+   * No environment is created for the call, the arguments are read from
+   * their slots instead.
+   * 
+   * @param closure   environment the function closes over
+   * @param receiver  instance passed as the first argument, or {@code null}
+   * @param inlined   inlined body of the function
+   * @param function  function used to check the arity
+   * @param paren     token used to report errors
+   * @param arguments argument expressions
+   * @return
+   */
+  private Object callInlined(Environment closure, LoxInstance receiver, Expr inlined,
+      LoxFunction function, Token paren, List<Expr> arguments) {
+    int offset = receiver == null ? 0 : 1;
+    Object[] values = new Object[arguments.size() + offset];
+    if (receiver != null)
+      values[0] = receiver;
+    for (int i = 0; i < arguments.size(); i++) {
+      values[i + offset] = evaluate(arguments.get(i));
+    }
+
+    if (arguments.size() != function.arity()) {
+      throw new RuntimeError(paren,
+          "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+    }
+
+    Environment previous = this.environment;
+    Object[] previousArguments = this.inlineArguments;
+    try {
+      this.environment = closure;
+      this.inlineArguments = values;
+      return evaluate(inlined);
+    } catch (RuntimeError error) {
+      throw frame(error, function, paren);
+    } finally {
+      this.environment = previous;
+      this.inlineArguments = previousArguments;
+    }
+  }
+
+  /**
+   * Evaluate the arguments and call the callee with them.
+   * 
+   * @param callee
+   * @param paren     token used to report errors
+   * @param arguments argument expressions
+   * @return
+   */
+  private Object call(Object callee, Token paren, List<Expr> arguments) {
+    List<Object> values = evaluateAll(arguments);
+
     if (!(callee instanceof LoxCallable)) {
-      throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+      throw new RuntimeError(paren, "Can only call functions and classes.");
     }
 
     LoxCallable function = (LoxCallable) callee;
+    checkArity(function, paren, values);
+
+    try {
+      return function.call(this, values);
+    } catch (RuntimeError error) {
+      throw frame(error, function, paren);
+    }
+  }
+
+  /**
+   * Record a call in the Lox stack trace of an error escaping it.
+   * Nothing is recorded while calls succeed, the trace is built as the
+   * error unwinds.
+   * 
+   * @param error
+   * @param callee
+   * @param paren  token of the call
+   * @return the error
+   */
+  private RuntimeError frame(RuntimeError error, Object callee, Token paren) {
+    String name = callee instanceof LoxFunction
+        ? ((LoxFunction) callee).declaration().name.lexeme()
+        : callee.toString();
+    error.addFrame(name + "()", paren.line);
+    return error;
+  }
+
+  /**
+   * Evaluate each argument expression in order.
+   * 
+   * @param arguments
+   * @return
+   */
+  private List<Object> evaluateAll(List<Expr> arguments) {
+    List<Object> values = new ArrayList<>(arguments.size());
+    for (Expr argument : arguments) {
+      values.add(evaluate(argument));
+    }
+    return values;
+  }
+
+  /**
+   * Throw an error if the number of arguments doesn't match the arity.
+   * 
+   * @param function
+   * @param paren
+   * @param arguments
+   */
+  private void checkArity(LoxCallable function, Token paren, List<Object> arguments) {
     if (arguments.size() != function.arity()) {
-      throw new RuntimeError(expr.paren,
+      throw new RuntimeError(paren,
           "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
     }
+  }
+
+  @Override
+  public Object visitCompareConstantExpr(Expr.CompareConstant expr) {
+    return compare(expr);
+  }
+
+  @Override
+  public Object visitHoistedExpr(Expr.Hoisted expr) {
+    Object value = expr.values[expr.index];
+    if (value == UNSET) {
+      // First evaluation since entering the loop
+      value = evaluate(expr.expression);
+      expr.values[expr.index] = value;
+    }
+    return value;
+  }
 
-    return function.call(this, arguments);
+  @Override
+  public Object visitIncrementExpr(Expr.Increment expr) {
+    Object value = lookUpVariable(expr.name, expr.depth);
+    if (!(value instanceof Double)) {
+      if (expr.operator.type == TokenType.PLUS)
+        throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+      throw new RuntimeError(expr.operator, "Operands must be numbers.");
+    }
+
+    Object result = (double) value + expr.delta;
+    if (expr.depth >= 0) {
+      environment.assignAt(expr.depth, expr.name, result);
+    } else {
+      globals.assign(expr.name, result);
+    }
+    return result;
+  }
+
+  @Override
+  public Object visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    return inlineArguments[expr.index];
+  }
+
+  @Override
+  public Object visitInvokeExpr(Expr.Invoke expr) {
+    Object object = evaluate(expr.object);
+    if (!(object instanceof LoxInstance)) {
+      throw new RuntimeError(expr.name, "Only instances have properties.");
+    }
+
+    LoxInstance instance = (LoxInstance) object;
+    LoxFunction method = instance.findMethod(expr.name.lexeme());
+    if (method == null) {
+      // A field or an undefined property, same as a normal call
+      return call(instance.get(expr.name), expr.paren, expr.arguments);
+    }
+
+    if (Lox.inline) {
+      Expr inlined = expr.site.profile(method, true, this);
+      if (inlined != null) {
+        return callInlined(method.closure(), instance, inlined, method, expr.paren, expr.arguments);
+      }
+    }
+
+    List<Object> arguments = evaluateAll(expr.arguments);
+    checkArity(method, expr.paren, arguments);
+    try {
+      return method.invoke(instance, this, arguments);
+    } catch (RuntimeError error) {
+      throw frame(error, method, expr.paren);
+    }
   }
 
   @Override
@@ -0,0 +1,965 @@
+// JavaGenerator.java
+// Generates the Java source of a resolved Lox program for loxc.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class JavaGenerator implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+  // Simple name of the generated class, in the package of the runtime
+  static final String CLASS_NAME = "LoxScript";
+  // Generated text put in one method of top level statements before the
+  // next one is started, Java methods are limited to 64KB of bytecode
+  private static final int CHUNK_SIZE = 16000;
+  // Globals declared in one holder class
+  private static final int HOLDER_SIZE = 1000;
+  // Where the kind of a local is filled in once it is known to be captured
+  private static final Pattern MARKER = Pattern.compile("\u0001([TWR])(\\d+)\u0001");
+
+  /**
+   * A local variable, or the "this" and "super" of a method.
+   */
+  private static class Local {
+    final String name;
+    // Position in the list of locals, used by the markers
+    final int index;
+    // Nesting of the Java method declaring it
+    final int level;
+    // "this" and "super" are never assigned, so closures copy them
+    final boolean isFinal;
+    // Set when a closure uses it, it is then kept in a cell
+    boolean captured = false;
+
+    Local(String name, int index, int level, boolean isFinal) {
+      this.name = name;
+      this.index = index;
+      this.level = level;
+      this.isFinal = isFinal;
+    }
+  }
+
+  // Mirrors the scopes of the resolver, so a depth finds the same variable
+  private final Stack<Map<String, Local>> scopes = new Stack<>();
+  private final List<Local> locals = new ArrayList<>();
+  // Java field of each global, in the order they are first used
+  private final Map<String, String> globals = new LinkedHashMap<>();
+  // Number literals of the chunk, boxed and unboxed constants are declared
+  // for each
+  private final Map<Double, Integer> numbers = new HashMap<>();
+  private int names = 0;
+
+  // Code of the Java method being generated
+  private StringBuilder code = new StringBuilder();
+  private int indent = 4;
+  private int level = 0;
+  // Temporaries of the Java method being generated
+  private List<String> temps = new ArrayList<>();
+  // Value of a bare "return" in the function being generated
+  private String returnValue = "null";
+
+  /**
+   * Generate the source of a class running the program.
+   * Each chunk of statements is a nested class with the constants it uses,
+   * and the globals are spread over holder classes, since a class file is
+   * limited to 64K constants.
+   * 
+   * @param statements resolved statements
+   * @return Java source code
+   */
+  String generate(List<Stmt> statements) {
+    StringBuilder chunks = new StringBuilder();
+    int count = 0;
+    for (int i = 0; i < statements.size(); count++) {
+      code = new StringBuilder();
+      temps = new ArrayList<>();
+      numbers.clear();
+      while (i < statements.size() && code.length() < CHUNK_SIZE) {
+        execute(statements.get(i++));
+      }
+
+      chunks.append("\n  private static final class C").append(count).append(" {\n");
+      for (Map.Entry<Double, Integer> number : numbers.entrySet()) {
+        int index = number.getValue();
+        chunks.append("    static final Object K").append(index).append(" = ")
+            .append(javaDouble(number.getKey())).append(";\n");
+        chunks.append("    static final double N").append(index).append(" = (Double) K")
+            .append(index).append(";\n");
+      }
+      chunks.append("\n    static void run() {\n");
+      chunks.append(declareTemps());
+      chunks.append(code);
+      chunks.append("    }\n");
+      chunks.append("  }\n");
+    }
+
+    StringBuilder source = new StringBuilder();
+    source.append("// Generated by loxc.\n\n");
+    source.append("package com.craftinginterpreters.lox;\n\n");
+    source.append("import java.util.HashMap;\n");
+    source.append("import java.util.Map;\n\n");
+    source.append("public final class ").append(CLASS_NAME).append(" extends CompiledProgram {\n");
+    source.append("  public static void main(String[] args) {\n");
+    source.append("    start(new ").append(CLASS_NAME).append("());\n");
+    source.append("  }\n\n");
+    source.append("  @Override\n");
+    source.append("  void run() {\n");
+    for (int i = 0; i < count; i++) {
+      source.append("    C").append(i).append(".run();\n");
+    }
+    source.append("  }\n");
+
+    int holder = -1;
+    for (Map.Entry<String, String> global : globals.entrySet()) {
+      if (!global.getValue().startsWith("G" + holder + ".")) {
+        if (holder >= 0)
+          source.append("  }\n");
+        holder++;
+        source.append("\n  static final class G").append(holder).append(" {\n");
+      }
+      source.append("    static Object g_").append(global.getKey()).append(" = ")
+          .append(global.getKey().equals("clock") ? "CLOCK" : "UNDEFINED").append(";\n");
+    }
+    if (holder >= 0)
+      source.append("  }\n");
+    source.append(chunks);
+    source.append("}\n");
+
+    return fillLocals(source);
+  }
+
+  /**
+   * Replace the markers of the locals now that their kind is known.
+   * Captured locals live in a one element array shared with the closures.
+   * 
+   * @param source
+   * @return {@code String}
+   */
+  private String fillLocals(CharSequence source) {
+    Matcher matcher = MARKER.matcher(source);
+    StringBuilder result = new StringBuilder(source.length());
+    while (matcher.find()) {
+      Local local = locals.get(Integer.parseInt(matcher.group(2)));
+      String text;
+      switch (matcher.group(1)) {
+        case "T":
+          text = local.captured ? "Object[]" : "Object";
+          break;
+        case "W":
+          text = local.captured ? "cell" : "";
+          break;
+        default:
+          text = local.captured ? local.name + "[0]" : local.name;
+          break;
+      }
+      matcher.appendReplacement(result, text);
+    }
+    matcher.appendTail(result);
+    return result.toString();
+  }
+
+  /**
+   * Declare the temporaries used by the method just generated.
+   * 
+   * @return {@code String}
+   */
+  private String declareTemps() {
+    if (temps.isEmpty())
+      return "";
+    return " ".repeat(indent + 2) + "Object " + String.join(" = null, ", temps) + " = null;\n";
+  }
+
+  /**
+   * Append a line of code to the current method.
+   * 
+   * @param text
+   */
+  private void line(String text) {
+    code.append(" ".repeat(indent + 2)).append(text).append('\n');
+  }
+
+  /**
+   * Make a new Java name.
+   * 
+   * @param prefix
+   * @return {@code String}
+   */
+  private String name(String prefix) {
+    return prefix + names++;
+  }
+
+  /**
+   * Make a new temporary of the current method.
+   * 
+   * @return {@code String}
+   */
+  private String temp() {
+    String temp = name("t");
+    temps.add(temp);
+    return temp;
+  }
+
+  /**
+   * Declare a local in the innermost scope.
+   * 
+   * @param name
+   * @return the index of the local
+   */
+  private int declare(Token name) {
+    Local local = new Local(name("v"), locals.size(), level, false);
+    locals.add(local);
+    scopes.peek().put(name.lexeme(), local);
+    return local.index;
+  }
+
+  /**
+   * Declare "this" or "super" in a scope of its own.
+   * 
+   * @param name
+   * @param javaName
+   */
+  private void declareFinal(String name, String javaName) {
+    Map<String, Local> scope = new HashMap<>();
+    scope.put(name, new Local(javaName, -1, level, true));
+    scopes.push(scope);
+  }
+
+  /**
+   * Get the code of a local found at the depth given by the resolver.
+   * 
+   * @param depth
+   * @param name
+   * @return {@code String}
+   */
+  private String local(int depth, String name) {
+    Local local = scopes.get(scopes.size() - 1 - depth).get(name);
+    if (local.isFinal)
+      return local.name;
+    if (local.level != level)
+      local.captured = true;
+    return "\u0001R" + local.index + "\u0001";
+  }
+
+  /**
+   * Get the code of a global, declaring it in the class.
+   * 
+   * @param name
+   * @return {@code String}
+   */
+  private String global(Token name) {
+    return globals.computeIfAbsent(name.lexeme(),
+        lexeme -> "G" + globals.size() / HOLDER_SIZE + ".g_" + lexeme);
+  }
+
+  /**
+   * Get the code of a declared local or global variable.
+   * 
+   * @param index index of the local, or -1 for a global
+   * @param name
+   * @return {@code String}
+   */
+  private String variable(int index, Token name) {
+    return index < 0 ? global(name) : "\u0001R" + index + "\u0001";
+  }
+
+  /**
+   * Declare a variable with a value, local or global.
+   * 
+   * @param name
+   * @param value
+   * @return index of the local, or -1 for a global
+   */
+  private int define(Token name, String value) {
+    if (scopes.isEmpty()) {
+      line(global(name) + " = " + value + ";");
+      return -1;
+    }
+
+    int index = declare(name);
+    line("\u0001T" + index + "\u0001 " + locals.get(index).name + " = \u0001W" + index + "\u0001(" + value + ");");
+    return index;
+  }
+
+  /**
+   * Read a variable, local or global.
+   * 
+   * @param name
+   * @param depth depth given by the resolver
+   * @return {@code String}
+   */
+  private String read(Token name, int depth) {
+    if (depth >= 0)
+      return local(depth, name.lexeme());
+    return "global(" + global(name) + ", " + string(name.lexeme()) + ", " + name.line + ")";
+  }
+
+  /**
+   * Assign a variable, local or global.
+   * 
+   * @param name
+   * @param depth depth given by the resolver
+   * @param value
+   * @return {@code String}
+   */
+  private String write(Token name, int depth, String value) {
+    if (depth >= 0)
+      return "(" + local(depth, name.lexeme()) + " = " + value + ")";
+    String global = global(name);
+    return "(" + global + " = assign(" + global + ", " + value + ", " + string(name.lexeme()) + ", "
+        + name.line + "))";
+  }
+
+  /**
+   * Generate a statement.
+   * 
+   * @param stmt
+   */
+  private void execute(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  /**
+   * Generate an expression evaluating to a boxed value.
+   * 
+   * @param expr
+   * @return {@code String}
+   */
+  private String evaluate(Expr expr) {
+    return expr.accept(this);
+  }
+
+  /**
+   * Generate an expression inferred to be a number as a primitive double,
+   * like {@code Interpreter.evaluateNumber()}.
+   * 
+   * @param expr
+   * @return {@code String}
+   */
+  private String number(Expr expr) {
+    switch (expr.kind) {
+      case Expr.LITERAL:
+        return "N" + constant((double) ((Expr.Literal) expr).value);
+      case Expr.GROUPING:
+        return number(((Expr.Grouping) expr).expression);
+      case Expr.BINARY: {
+        Expr.Binary binary = (Expr.Binary) expr;
+        String operator = arithmetic(binary);
+        if (operator != null)
+          return "(" + number(binary.left) + " " + operator + " " + number(binary.right) + ")";
+        break;
+      }
+      case Expr.UNARY: {
+        Expr.Unary unary = (Expr.Unary) expr;
+        if (unary.operands == TypeInference.NUMBER)
+          return "(-" + number(unary.right) + ")";
+        break;
+      }
+      default:
+        break;
+    }
+    return "((Double) " + evaluate(expr) + ")";
+  }
+
+  /**
+   * Check whether an expression is computed on primitive doubles.
+   * 
+   * @param expr
+   * @return {@code boolean}
+   */
+  private boolean isNumber(Expr expr) {
+    switch (expr.kind) {
+      case Expr.LITERAL:
+        return ((Expr.Literal) expr).value instanceof Double;
+      case Expr.GROUPING:
+        return isNumber(((Expr.Grouping) expr).expression);
+      case Expr.BINARY:
+        return arithmetic((Expr.Binary) expr) != null;
+      case Expr.UNARY:
+        return ((Expr.Unary) expr).operands == TypeInference.NUMBER;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Get the Java operator of arithmetic on operands inferred to be numbers.
+   * 
+   * @param expr
+   * @return the operator, or {@code null}
+   */
+  private static String arithmetic(Expr.Binary expr) {
+    if (expr.operands != TypeInference.NUMBER)
+      return null;
+    switch (expr.operator.type) {
+      case MINUS:
+        return "-";
+      case PLUS:
+        return "+";
+      case SLASH:
+        return "/";
+      case STAR:
+        return "*";
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Generate a condition as a primitive boolean, like
+   * {@code Interpreter.test()}.
+   * 
+   * @param expr
+   * @return {@code String}
+   */
+  private String test(Expr expr) {
+    switch (expr.kind) {
+      case Expr.COMPARE_CONSTANT: {
+        Expr.CompareConstant compare = (Expr.CompareConstant) expr;
+        return comparison(compare.operator, read(compare.name, compare.depth),
+            "K" + constant(compare.constant));
+      }
+      case Expr.GROUPING:
+        return test(((Expr.Grouping) expr).expression);
+      case Expr.LOGICAL: {
+        Expr.Logical logical = (Expr.Logical) expr;
+        String operator = logical.operator.type == TokenType.OR ? " || " : " && ";
+        return "(" + test(logical.left) + operator + test(logical.right) + ")";
+      }
+      case Expr.UNARY: {
+        Expr.Unary unary = (Expr.Unary) expr;
+        if (unary.operator.type == TokenType.BANG)
+          return "(!" + test(unary.right) + ")";
+        break;
+      }
+      case Expr.BINARY: {
+        Expr.Binary binary = (Expr.Binary) expr;
+        switch (binary.operator.type) {
+          case BANG_EQUAL:
+            return "(!isEqual(" + evaluate(binary.left) + ", " + evaluate(binary.right) + "))";
+          case EQUAL_EQUAL:
+            return "isEqual(" + evaluate(binary.left) + ", " + evaluate(binary.right) + ")";
+          case GREATER:
+          case GREATER_EQUAL:
+          case LESS:
+          case LESS_EQUAL:
+            if (binary.operands == TypeInference.NUMBER)
+              return "(" + number(binary.left) + " " + binary.operator.lexeme() + " " + number(binary.right)
+                  + ")";
+            return comparison(binary.operator, evaluate(binary.left), evaluate(binary.right));
+          default:
+            break;
+        }
+        break;
+      }
+      default:
+        break;
+    }
+    return "isTruthy(" + evaluate(expr) + ")";
+  }
+
+  /**
+   * Generate a comparison of operands that may not be numbers.
+   * 
+   * @param operator
+   * @param left
+   * @param right
+   * @return {@code String}
+   */
+  private static String comparison(Token operator, String left, String right) {
+    String helper;
+    switch (operator.type) {
+      case GREATER:
+        helper = "greater";
+        break;
+      case GREATER_EQUAL:
+        helper = "greaterEqual";
+        break;
+      case LESS:
+        helper = "less";
+        break;
+      default:
+        helper = "lessEqual";
+        break;
+    }
+    return helper + "(" + left + ", " + right + ", " + operator.line + ")";
+  }
+
+  /**
+   * Get the index of the constants of a number.
+   * 
+   * @param value
+   * @return {@code int}
+   */
+  private int constant(double value) {
+    Integer index = numbers.get(value);
+    if (index == null) {
+      index = numbers.size();
+      numbers.put(value, index);
+    }
+    return index;
+  }
+
+  /**
+   * Write a number as a Java literal.
+   * 
+   * @param value
+   * @return {@code String}
+   */
+  private static String javaDouble(double value) {
+    if (Double.isNaN(value))
+      return "Double.NaN";
+    if (Double.isInfinite(value))
+      return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+    return Double.toString(value);
+  }
+
+  /**
+   * Write a string as a Java literal.
+   * 
+   * @param value
+   * @return {@code String}
+   */
+  private static String string(String value) {
+    StringBuilder literal = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        literal.append('\\').append(c);
+      } else if (c == '\n') {
+        literal.append("\\n");
+      } else if (c < 0x20) {
+        // Unicode escapes are read before the literal, so a line break
+        // written as one would end it
+        literal.append(String.format("\\%03o", (int) c));
+      } else if (c >= 0x7f) {
+        literal.append(String.format("\\u%04x", (int) c));
+      } else {
+        literal.append(c);
+      }
+    }
+    return literal.append('"').toString();
+  }
+
+  /**
+   * Generate the arguments of a call, after the callee.
+   * 
+   * @param arguments
+   * @return {@code String}
+   */
+  private String arguments(List<Expr> arguments) {
+    StringBuilder builder = new StringBuilder();
+    if (arguments.size() > 3)
+      builder.append(", new Object[] {");
+    for (int i = 0; i < arguments.size(); i++) {
+      builder.append(i == 0 && arguments.size() > 3 ? " " : ", ").append(evaluate(arguments.get(i)));
+    }
+    if (arguments.size() > 3)
+      builder.append(" }");
+    return builder.toString();
+  }
+
+  /**
+   * Get the suffix of the helper calling with a number of arguments.
+   * 
+   * @param arguments
+   * @return {@code String}
+   */
+  private static String arity(List<Expr> arguments) {
+    return arguments.size() > 3 ? "" : Integer.toString(arguments.size());
+  }
+
+  /**
+   * Generate a call of a method, like {@code Expr.Invoke}.
+   * What is called is found before the arguments are evaluated.
+   * 
+   * @param object
+   * @param name
+   * @param paren
+   * @param arguments
+   * @return {@code String}
+   */
+  private String invoke(Expr object, Token name, Token paren, List<Expr> arguments) {
+    String temp = temp();
+    return "callMethod" + arity(arguments) + "((" + temp + " = " + evaluate(object) + "), method(" + temp + ", "
+        + string(name.lexeme()) + ", " + name.line + ")" + arguments(arguments) + ", " + paren.line + ")";
+  }
+
+  /**
+   * Generate the declaration of a function or method, as an anonymous class.
+   * Functions with up to three parameters take them directly.
+   * 
+   * @param prefix   code before the function
+   * @param function
+   * @param isMethod
+   * @param suffix   code after the function
+   */
+  private void function(String prefix, Stmt.Function function, boolean isMethod, String suffix) {
+    int arity = function.params.size();
+    boolean isInitializer = isMethod && function.name.lexeme().equals("init");
+    String self = name("s");
+
+    line(prefix + "new CompiledFunction(" + string(function.name.lexeme()) + ", " + arity + ", " + isMethod + ") {");
+    indent += 2;
+
+    // The body is generated first, to know its temporaries
+    StringBuilder enclosingCode = code;
+    List<String> enclosingTemps = temps;
+    String enclosingReturn = returnValue;
+    code = new StringBuilder();
+    temps = new ArrayList<>();
+    returnValue = isInitializer ? self : "null";
+    level++;
+    indent += 2;
+
+    if (isMethod)
+      declareFinal("this", self);
+    scopes.push(new HashMap<>());
+    List<String> params = new ArrayList<>();
+    for (Token param : function.params) {
+      String name = name("a");
+      params.add(name);
+      define(param, name);
+    }
+    for (Stmt statement : function.body) {
+      execute(statement);
+    }
+    line("return " + returnValue + ";");
+    scopes.pop();
+    if (isMethod)
+      scopes.pop();
+
+    indent -= 2;
+    level--;
+    String body = declareTemps() + code;
+    code = enclosingCode;
+    temps = enclosingTemps;
+    returnValue = enclosingReturn;
+
+    line("@Override");
+    if (arity > 3) {
+      line("Object invoke(Object " + self + ", Object[] arguments) {");
+      for (int i = 0; i < arity; i++) {
+        line("  Object " + params.get(i) + " = arguments[" + i + "];");
+      }
+      code.append(body);
+      line("}");
+    } else {
+      StringBuilder signature = new StringBuilder("Object invoke" + arity + "(Object " + self);
+      StringBuilder call = new StringBuilder("return invoke" + arity + "(" + self);
+      for (int i = 0; i < arity; i++) {
+        signature.append(", Object ").append(params.get(i));
+        call.append(", arguments[").append(i).append("]");
+      }
+      line(signature + ") {");
+      code.append(body);
+      line("}");
+      line("");
+      line("@Override");
+      line("Object invoke(Object " + self + ", Object[] arguments) {");
+      line("  " + call + ");");
+      line("}");
+    }
+
+    indent -= 2;
+    line("}" + suffix);
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    line("{");
+    indent += 2;
+    scopes.push(new HashMap<>());
+    for (Stmt statement : stmt.statements) {
+      execute(statement);
+    }
+    scopes.pop();
+    indent -= 2;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    String superclass = "null";
+    if (stmt.superclass != null) {
+      superclass = name("s");
+      line("CompiledClass " + superclass + " = superclass(" + evaluate(stmt.superclass) + ", "
+          + stmt.superclass.name.line + ");");
+    }
+    int index = define(stmt.name, "null");
+
+    if (stmt.superclass != null)
+      declareFinal("super", superclass);
+
+    String methods = name("m");
+    line("Map<String, CompiledFunction> " + methods + " = new HashMap<>();");
+    for (Stmt.Function method : stmt.methods) {
+      function(methods + ".put(" + string(method.name.lexeme()) + ", ", method, true, ");");
+    }
+
+    if (stmt.superclass != null)
+      scopes.pop();
+
+    line(variable(index, stmt.name) + " = new CompiledClass(" + string(stmt.name.lexeme()) + ", " + superclass
+        + ", " + methods + ");");
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    line("discard(" + evaluate(stmt.expression) + ");");
+    return null;
+  }
+
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    // The initializer gets its own scope, shared by every iteration
+    line("{");
+    indent += 2;
+    if (stmt.initializer != null) {
+      scopes.push(new HashMap<>());
+      execute(stmt.initializer);
+    }
+
+    String condition = stmt.condition == null ? "FOREVER" : test(stmt.condition);
+    line("while (" + condition + ") {");
+    indent += 2;
+    execute(stmt.body);
+    if (stmt.increment != null)
+      line("discard(" + evaluate(stmt.increment) + ");");
+    indent -= 2;
+    line("}");
+
+    if (stmt.initializer != null)
+      scopes.pop();
+    indent -= 2;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    // Declared before its body, which may call it
+    int index = define(stmt.name, "null");
+    function(variable(index, stmt.name) + " = ", stmt, false, ";");
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    line("if (" + test(stmt.condition) + ") {");
+    indent += 2;
+    execute(stmt.thenBranch);
+    indent -= 2;
+    if (stmt.elseBranch != null) {
+      line("} else {");
+      indent += 2;
+      execute(stmt.elseBranch);
+      indent -= 2;
+    }
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    if (isNumber(stmt.expression)) {
+      line("print(" + number(stmt.expression) + ");");
+    } else {
+      line("print(" + evaluate(stmt.expression) + ");");
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    String value = stmt.value == null ? returnValue : evaluate(stmt.value);
+    // The condition keeps javac from rejecting the code after it
+    line("if (true) return " + value + ";");
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    define(stmt.name, stmt.initializer == null ? "null" : evaluate(stmt.initializer));
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    line("while (" + test(stmt.condition) + ") {");
+    indent += 2;
+    execute(stmt.body);
+    indent -= 2;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public String visitAssignExpr(Expr.Assign expr) {
+    return write(expr.name, expr.depth, evaluate(expr.value));
+  }
+
+  @Override
+  public String visitBinaryExpr(Expr.Binary expr) {
+    // Operand types proven by type inference need no checks
+    if (arithmetic(expr) != null)
+      return "Double.valueOf(" + number(expr) + ")";
+    if (expr.operands == TypeInference.STRING)
+      return "Rope.concat(" + evaluate(expr.left) + ", " + evaluate(expr.right) + ")";
+
+    String helper;
+    switch (expr.operator.type) {
+      case BANG_EQUAL:
+      case EQUAL_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return "Boolean.valueOf(" + test(expr) + ")";
+      case MINUS:
+        helper = "subtract";
+        break;
+      case PLUS:
+        helper = "add";
+        break;
+      case SLASH:
+        helper = "divide";
+        break;
+      default:
+        helper = "multiply";
+        break;
+    }
+    return helper + "(" + evaluate(expr.left) + ", " + evaluate(expr.right) + ", " + expr.operator.line + ")";
+  }
+
+  @Override
+  public String visitCallExpr(Expr.Call expr) {
+    if (expr.callee.kind == Expr.GET) {
+      Expr.Get get = (Expr.Get) expr.callee;
+      return invoke(get.object, get.name, expr.paren, expr.arguments);
+    }
+    if (expr.callee.kind == Expr.SUPER) {
+      Expr.Super callee = (Expr.Super) expr.callee;
+      return "callMethod" + arity(expr.arguments) + "(" + local(callee.depth - 1, "this") + ", "
+          + superMethod(callee) + arguments(expr.arguments) + ", " + expr.paren.line + ")";
+    }
+
+    return "call" + arity(expr.arguments) + "(" + evaluate(expr.callee) + arguments(expr.arguments) + ", "
+        + expr.paren.line + ")";
+  }
+
+  @Override
+  public String visitCompareConstantExpr(Expr.CompareConstant expr) {
+    return "Boolean.valueOf(" + test(expr) + ")";
+  }
+
+  @Override
+  public String visitGetExpr(Expr.Get expr) {
+    return "get(" + evaluate(expr.object) + ", " + string(expr.name.lexeme()) + ", " + expr.name.line + ")";
+  }
+
+  @Override
+  public String visitGroupingExpr(Expr.Grouping expr) {
+    return evaluate(expr.expression);
+  }
+
+  @Override
+  public String visitHoistedExpr(Expr.Hoisted expr) {
+    // Only pure expressions are hoisted, so evaluating again is the same
+    return evaluate(expr.expression);
+  }
+
+  @Override
+  public String visitIncrementExpr(Expr.Increment expr) {
+    String value = "increment(" + read(expr.name, expr.depth) + ", " + javaDouble(expr.delta) + ", "
+        + (expr.operator.type == TokenType.PLUS) + ", " + expr.operator.line + ")";
+    if (expr.depth >= 0)
+      return "(" + local(expr.depth, expr.name.lexeme()) + " = " + value + ")";
+    return "(" + global(expr.name) + " = " + value + ")";
+  }
+
+  @Override
+  public String visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    // Inlined bodies are only created at runtime
+    throw new IllegalStateException("Inlined body in a compiled program.");
+  }
+
+  @Override
+  public String visitInvokeExpr(Expr.Invoke expr) {
+    return invoke(expr.object, expr.name, expr.paren, expr.arguments);
+  }
+
+  @Override
+  public String visitLiteralExpr(Expr.Literal expr) {
+    if (expr.value == null)
+      return "null";
+    if (expr.value instanceof Boolean)
+      return (boolean) expr.value ? "Boolean.TRUE" : "Boolean.FALSE";
+    if (expr.value instanceof Double)
+      return "K" + constant((double) expr.value);
+    return string(expr.value.toString());
+  }
+
+  @Override
+  public String visitLogicalExpr(Expr.Logical expr) {
+    String temp = temp();
+    String left = "isTruthy(" + temp + " = " + evaluate(expr.left) + ")";
+    String right = evaluate(expr.right);
+    if (expr.operator.type == TokenType.OR)
+      return "(" + left + " ? " + temp + " : " + right + ")";
+    return "(" + left + " ? " + right + " : " + temp + ")";
+  }
+
+  @Override
+  public String visitSetExpr(Expr.Set expr) {
+    return "set(instance(" + evaluate(expr.object) + ", " + expr.name.line + "), " + string(expr.name.lexeme())
+        + ", " + evaluate(expr.value) + ")";
+  }
+
+  @Override
+  public String visitSuperExpr(Expr.Super expr) {
+    return "bind(" + superMethod(expr) + ", " + local(expr.depth - 1, "this") + ")";
+  }
+
+  /**
+   * Generate the lookup of a method of the superclass.
+   * 
+   * @param expr
+   * @return {@code String}
+   */
+  private String superMethod(Expr.Super expr) {
+    return "superMethod(" + local(expr.depth, "super") + ", " + string(expr.method.lexeme()) + ", "
+        + expr.method.line + ")";
+  }
+
+  @Override
+  public String visitThisExpr(Expr.This expr) {
+    return local(expr.depth, "this");
+  }
+
+  @Override
+  public String visitThisGetExpr(Expr.ThisGet expr) {
+    return "get(" + local(expr.depth, "this") + ", " + string(expr.name.lexeme()) + ", " + expr.name.line + ")";
+  }
+
+  @Override
+  public String visitUnaryExpr(Expr.Unary expr) {
+    if (expr.operands == TypeInference.NUMBER)
+      return "Double.valueOf(" + number(expr) + ")";
+    if (expr.operator.type == TokenType.BANG)
+      return "Boolean.valueOf(" + test(expr) + ")";
+    return "Double.valueOf(-number(" + evaluate(expr.right) + ", " + expr.operator.line + "))";
+  }
+
+  @Override
+  public String visitVariableExpr(Expr.Variable expr) {
+    return read(expr.name, expr.depth);
+  }
+}
@@ -0,0 +1,99 @@
+// LazyBody.java
+// A function body whose parsing or decoding is deferred to its first call.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class LazyBody {
+  // Body tokens followed by an end of file
+  final List<Token> tokens;
+  final boolean isMethod;
+  final boolean hasSuperclass;
+  // Resolution errors found when the body was checked
+  final List<Diagnostic> errors;
+  // Or the program the body is encoded in and the position of its list
+  final CompactProgram program;
+  final int body;
+
+  /**
+   * Initialize a deferred body.
+   * 
+   * @param tokens        tokens of the body followed by an end of file
+   * @param isMethod      whether the function is a method
+   * @param hasSuperclass whether the method's class has a superclass
+   * @param errors        resolution errors, reported when it is resolved
+   */
+  LazyBody(List<Token> tokens, boolean isMethod, boolean hasSuperclass, List<Diagnostic> errors) {
+    this.tokens = tokens;
+    this.isMethod = isMethod;
+    this.hasSuperclass = hasSuperclass;
+    this.errors = errors;
+    this.program = null;
+    this.body = -1;
+  }
+
+  /**
+   * Initialize a body left encoded in a compact program. It was resolved
+   * and optimized before it was encoded.
+   * 
+   * @param program program holding the body
+   * @param body    position of the list of statements of the body
+   */
+  LazyBody(CompactProgram program, int body) {
+    this.tokens = null;
+    this.isMethod = false;
+    this.hasSuperclass = false;
+    this.errors = new ArrayList<>();
+    this.program = program;
+    this.body = body;
+  }
+
+  /**
+   * Parse, resolve and optimize the deferred body of a function, or just
+   * decode it if it comes from a compact program.
+   * Errors are reported like any syntax or resolution error and then stop
+   * the program with a runtime error at the function.
+   * 
+   * @param function    declaration with a deferred body
+   * @param interpreter interpreter that receives the resolved variables
+   */
+  static void compile(Stmt.Function function, Interpreter interpreter) {
+    LazyBody lazy = function.lazy;
+    if (lazy.program != null) {
+      function.body.addAll(lazy.program.decodeStatements(lazy.body));
+      function.lazy = null;
+      return;
+    }
+
+    List<Stmt> body = new Parser(lazy.tokens).parse();
+    if (!Lox.hadError) {
+      function.body.addAll(body);
+      new Resolver(interpreter).resolveLazy(function, lazy.isMethod, lazy.hasSuperclass);
+    }
+
+    if (Lox.hadError) {
+      function.body.clear();
+      throw new RuntimeError(function.name, "Invalid body of '" + function.name.lexeme() + "'.");
+    }
+
+    if (Lox.optimize) {
+      // The body alone isn't a whole program to shake
+      Set<String> disabled = new HashSet<>(Lox.disabledPasses);
+      disabled.add("tree-shaking");
+      List<Stmt> optimized = Optimizer.standard(disabled).run(Arrays.asList((Stmt) function));
+      Stmt.Function result = (Stmt.Function) optimized.get(0);
+      if (result != function) {
+        List<Stmt> statements = new ArrayList<>(result.body);
+        function.body.clear();
+        function.body.addAll(statements);
+      }
+    }
+
+    function.lazy = null;
+  }
+}
@@ -0,0 +1,273 @@
+// LoopOptimization.java
+// Pass that hoists loop invariant expressions and finds counting loops.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class LoopOptimization extends AstRewriter implements Pass {
+  @Override
+  public String name() {
+    return "loops";
+  }
+
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    return rewrite(statements);
+  }
+
+  @Override
+  public Stmt visitForStmt(Stmt.For stmt) {
+    // Inner loops are optimized first
+    Stmt.For loop = (Stmt.For) super.visitForStmt(stmt);
+
+    Effects effects = new Effects();
+    effects.scan(loop.condition);
+    effects.scan(loop.increment);
+    effects.scan(loop.body);
+
+    loop = hoist(loop, effects);
+    loop.counted = isCounted(loop, effects);
+    return loop;
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Stmt.While loop = (Stmt.While) super.visitWhileStmt(stmt);
+
+    Effects effects = new Effects();
+    effects.scan(loop.condition);
+    effects.scan(loop.body);
+
+    // A while loop is a for loop without initializer and increment
+    Stmt.For hoisted = hoist(new Stmt.For(null, loop.condition, null, loop.body), effects);
+    if (hoisted.hoisted == null)
+      return loop;
+    return hoisted;
+  }
+
+  /**
+   * Replace the loop invariant expressions of a loop with hoisted ones.
+   * Each one is evaluated the first time it is reached after entering the
+   * loop, so errors still happen in the same place, and then reused.
+   * 
+   * @param loop
+   * @param effects what the loop may change
+   * @return the loop, or a new loop with the hoisted expressions
+   */
+  private Stmt.For hoist(Stmt.For loop, Effects effects) {
+    // Calls could change any variable, and functions declared in the loop
+    // could evaluate a hoisted expression after the loop is done.
+    if (effects.hasCall || effects.hasFunction)
+      return loop;
+
+    Hoister hoister = new Hoister(effects);
+    Expr condition = hoister.rewrite(loop.condition);
+    Expr increment = hoister.rewrite(loop.increment);
+    Stmt body = hoister.rewrite(loop.body);
+    if (hoister.hoisted.isEmpty())
+      return loop;
+
+    Object[] values = new Object[hoister.hoisted.size()];
+    for (Expr.Hoisted expr : hoister.hoisted) {
+      expr.values = values;
+    }
+
+    Stmt.For result = new Stmt.For(loop.initializer, condition, increment, body);
+    result.hoisted = values;
+    return result;
+  }
+
+  /**
+   * Check if a loop counts a number variable up or down to a fixed bound.
+   * <p>
+   * for (var i = start; i &lt; bound; i = i + step) body
+   * 
+   * @param loop
+   * @param effects what the loop may change
+   * @return {@code boolean}
+   */
+  private boolean isCounted(Stmt.For loop, Effects effects) {
+    if (!(loop.initializer instanceof Stmt.Var) || !(loop.increment instanceof Expr.Increment))
+      return false;
+
+    String name = ((Stmt.Var) loop.initializer).name.lexeme();
+    Expr.Increment increment = (Expr.Increment) loop.increment;
+    if (!isLoopVariable(name, increment.name, increment.depth))
+      return false;
+
+    // The body must leave the induction variable alone
+    Effects body = new Effects();
+    body.scan(loop.body);
+    if (body.assigned.contains(name))
+      return false;
+
+    if (loop.condition instanceof Expr.CompareConstant) {
+      Expr.CompareConstant compare = (Expr.CompareConstant) loop.condition;
+      return isLoopVariable(name, compare.name, compare.depth);
+    }
+
+    if (!(loop.condition instanceof Expr.Binary))
+      return false;
+    Expr.Binary compare = (Expr.Binary) loop.condition;
+    switch (compare.operator.type) {
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        break;
+      default:
+        return false;
+    }
+    if (!(compare.left instanceof Expr.Variable))
+      return false;
+    Expr.Variable variable = (Expr.Variable) compare.left;
+
+    // The bound is evaluated once, so it must not change during the loop
+    return isLoopVariable(name, variable.name, variable.depth)
+        && !effects.hasCall && effects.isInvariant(compare.right);
+  }
+
+  /**
+   * Check if a reference is to the variable declared by the loop initializer.
+   * 
+   * @param name  name of the loop variable
+   * @param token name of the reference
+   * @param depth resolved depth of the reference
+   * @return {@code boolean}
+   */
+  private boolean isLoopVariable(String name, Token token, int depth) {
+    return depth == 0 && token.lexeme().equals(name);
+  }
+
+  /**
+   * Collects what running a part of a loop may change.
+   */
+  private static class Effects extends AstRewriter {
+    // Names of the variables assigned or declared
+    final Set<String> assigned = new HashSet<>();
+    boolean hasCall = false;
+    boolean hasFunction = false;
+
+    /**
+     * Scan a statement.
+     * 
+     * @param stmt
+     */
+    void scan(Stmt stmt) {
+      rewrite(stmt);
+    }
+
+    /**
+     * Scan an expression.
+     * 
+     * @param expr
+     */
+    void scan(Expr expr) {
+      rewrite(expr);
+    }
+
+    /**
+     * Check if an expression gives the same value on every iteration.
+     * Only side effect free operators over literals and variables that are
+     * never assigned in the loop qualify.
+     * 
+     * @param expr
+     * @return {@code boolean}
+     */
+    boolean isInvariant(Expr expr) {
+      switch (expr.kind) {
+        case Expr.LITERAL:
+        case Expr.HOISTED:
+          return true;
+        case Expr.VARIABLE:
+          return !assigned.contains(((Expr.Variable) expr).name.lexeme());
+        case Expr.COMPARE_CONSTANT:
+          return !assigned.contains(((Expr.CompareConstant) expr).name.lexeme());
+        case Expr.GROUPING:
+          return isInvariant(((Expr.Grouping) expr).expression);
+        case Expr.UNARY:
+          return isInvariant(((Expr.Unary) expr).right);
+        case Expr.BINARY:
+          return isInvariant(((Expr.Binary) expr).left) && isInvariant(((Expr.Binary) expr).right);
+        default:
+          return false;
+      }
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+      assigned.add(expr.name.lexeme());
+      return super.visitAssignExpr(expr);
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+      assigned.add(expr.name.lexeme());
+      return super.visitIncrementExpr(expr);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+      hasCall = true;
+      return super.visitCallExpr(expr);
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Expr.Invoke expr) {
+      hasCall = true;
+      return super.visitInvokeExpr(expr);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+      assigned.add(stmt.name.lexeme());
+      return super.visitVarStmt(stmt);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+      assigned.add(stmt.name.lexeme());
+      hasFunction = true;
+      return super.visitFunctionStmt(stmt);
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+      assigned.add(stmt.name.lexeme());
+      hasFunction = true;
+      return super.visitClassStmt(stmt);
+    }
+  }
+
+  /**
+   * Replaces the largest invariant expressions of a loop with hoisted ones.
+   */
+  private static class Hoister extends AstRewriter {
+    private final Effects effects;
+    final List<Expr.Hoisted> hoisted = new ArrayList<>();
+
+    /**
+     * Initialize the hoister with what the loop may change.
+     * 
+     * @param effects
+     */
+    Hoister(Effects effects) {
+      this.effects = effects;
+    }
+
+    @Override
+    Expr rewrite(Expr expr) {
+      // Only operators are worth caching, not single values
+      if ((expr instanceof Expr.Binary || expr instanceof Expr.Unary) && effects.isInvariant(expr)) {
+        Expr.Hoisted result = new Expr.Hoisted(expr, hoisted.size());
+        hoisted.add(result);
+        return result;
+      }
+      return super.rewrite(expr);
+    }
+  }
+}
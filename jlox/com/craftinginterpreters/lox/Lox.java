@@ -8,37 +8,171 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class Lox {
   // Static interpreter so the REPL uses the same interpreter
-  private static final Interpreter interpreter = new Interpreter();
+  private static Interpreter interpreter = new Interpreter();
   // Keep track of error status during execution
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
+  // Optimizations that can be switched off from the command line
+  static boolean optimize = true;
+  static final Set<String> disabledPasses = new HashSet<>();
+  static boolean inline = true;
+  // File the runtime profile is loaded from and saved to
+  static Path profile = null;
+  // Print the types inferred for locals and operators
+  static boolean dumpTypes = false;
+  // Print the declarations removed by tree shaking
+  static boolean dumpRemoved = false;
+  // Parse the bodies of top level functions on their first call
+  static boolean lazy = false;
+  // Cache the results of pure functions
+  static boolean memoize = false;
+  // Scan and parse large sources in chunks on several threads
+  static boolean parallel = false;
+  // Run each top level declaration before the next one is parsed
+  static boolean stream = false;
+  // Keep the program in flat arrays and decode it as it runs
+  static boolean compact = false;
+  // Reuse the compiled program saved by a previous run of the same script
+  static boolean cache = false;
+  // Where compiled programs are saved, null for next to the scripts
+  static Path cacheDirectory = null;
+  // Errors found on a thread are only collected while this is set on it
+  private static final ThreadLocal<List<Diagnostic>> silencedErrors = new ThreadLocal<>();
 
   /**
    * Starts the interpreter in specified mode.
-   * Only accepts 0 or 1 argument.
+   * Accepts any number of options followed by 0 or 1 script.
    * 
    * @param args A list of command line arguments
    * @throws IOException If an input or output exception occurred
    */
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      // Invalid to have more than 1 argument
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
+    String script = null;
+    Path output = null;
+    for (String arg : args) {
+      if (arg.startsWith("--output=")) {
+        output = Paths.get(arg.substring("--output=".length()));
+      } else if (arg.startsWith("--")) {
+        if (!setOption(arg))
+          usage();
+      } else if (script == null) {
+        script = arg;
+      } else {
+        // Invalid to have more than 1 script
+        usage();
+      }
+    }
+
+    if (output != null)
+      interpreter = new Interpreter(OutputSink.file(output));
+
+    if (script != null) {
       // Execute the input file
-      runFile(args[0]);
+      runFile(script);
     } else {
       // Run the interpreter in REPL mode
       runPrompt();
     }
   }
 
+  /**
+   * Apply a command line option.
+   * 
+   * @param option option including the leading "--"
+   * @return {@code false} if the option is unknown
+   */
+  private static boolean setOption(String option) {
+    if (option.startsWith("--profile=")) {
+      profile = Paths.get(option.substring("--profile=".length()));
+      return true;
+    }
+
+    if (option.startsWith("--cache=")) {
+      cache = true;
+      cacheDirectory = Paths.get(option.substring("--cache=".length()));
+      return true;
+    }
+
+    if (option.startsWith("--no-") && Optimizer.isPass(option.substring("--no-".length()))) {
+      disabledPasses.add(option.substring("--no-".length()));
+      return true;
+    }
+
+    switch (option) {
+      case "--no-optimize":
+        optimize = false;
+        return true;
+      case "--no-inline":
+        inline = false;
+        return true;
+      case "--lazy":
+        lazy = true;
+        return true;
+      case "--intern":
+        Interner.enabled = true;
+        return true;
+      case "--memoize":
+        memoize = true;
+        return true;
+      case "--parallel":
+        parallel = true;
+        return true;
+      case "--stream":
+        stream = true;
+        return true;
+      case "--compact":
+        compact = true;
+        return true;
+      case "--cache":
+        cache = true;
+        return true;
+      case "--dump-removed":
+        dumpRemoved = true;
+        return true;
+      case "--dump-types":
+        dumpTypes = true;
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Print the usage and exit.
+   */
+  private static void usage() {
+    System.out.println("Usage: jlox [options] [script]");
+    System.out.println("  --no-optimize           don't run any optimization pass");
+    System.out.print("  --no-<pass>             don't run one pass:");
+    for (Pass pass : Optimizer.allPasses()) {
+      System.out.print(" " + pass.name());
+    }
+    System.out.println();
+    System.out.println("  --no-inline             don't inline small functions at call sites");
+    System.out.println("  --profile=<file>        reuse the runtime profile saved in a file");
+    System.out.println("  --output=<file>         write what the script prints to a file");
+    System.out.println("  --lazy                  check function bodies when read, build them on their first call");
+    System.out.println("  --intern                intern strings so equal strings are identical");
+    System.out.println("  --memoize               cache the results of pure functions");
+    System.out.println("  --parallel              scan and parse large scripts on several threads");
+    System.out.println("  --stream                run each top level declaration as soon as it is parsed,");
+    System.out.println("                          declarations before a syntax error have already run");
+    System.out.println("  --compact               keep the program in flat arrays, decoded as it runs");
+    System.out.println("  --cache[=<dir>]         reuse the program compiled by a previous run of the script");
+    System.out.println("  --dump-types            print the inferred types of locals and operators");
+    System.out.println("  --dump-removed          print the declarations removed by tree shaking");
+    System.exit(64);
+  }
+
   /**
    * Execute the file pointed to by path.
    * 
@@ -46,12 +180,83 @@ public class Lox {
    * @throws IOException If an input or output exception occurred
    */
   private static void runFile(String path) throws IOException {
+    Charset charset = Charset.defaultCharset();
+    if (profile == null && stream) {
+      if (ByteScanner.supports(charset)) {
+        runStream(ByteScanner.open(Paths.get(path), charset));
+      } else {
+        runStream(new Scanner(new String(Files.readAllBytes(Paths.get(path)), charset)));
+      }
+      exitOnError();
+      return;
+    }
+
+    // Bodies are encoded after they are parsed and resolved, not before
+    if (compact || cache)
+      lazy = false;
+
+    // Dumps are printed by the front end, so they need it to run
+    if (cache && profile == null && !dumpTypes && !dumpRemoved) {
+      CompactProgram program = ProgramCache.compile(Paths.get(path), charset, cacheDirectory, interpreter);
+      if (program != null)
+        program.run(interpreter);
+      exitOnError();
+      return;
+    }
+
+    // Without a profile to match against the text, the file is scanned as
+    // bytes straight from a memory mapping
+    if (profile == null && !parallel && ByteScanner.supports(charset)) {
+      execute(compile(ByteScanner.scanFile(Paths.get(path), charset), interpreter));
+      exitOnError();
+      return;
+    }
+
     // Read content from file as bytes
     byte[] bytes = Files.readAllBytes(Paths.get(path));
     // Convert the bytes to String and execute it as raw source code
-    run(new String(bytes, Charset.defaultCharset()));
+    String source = new String(bytes, charset);
+    if (profile == null) {
+      execute(compile(source, interpreter));
+      exitOnError();
+      return;
+    }
+
+    // The profile is kept in the tree, so it isn't encoded
+    List<Stmt> statements = compile(source, interpreter);
+    if (statements != null) {
+      // Start from what was learned in previous runs
+      Profile.load(profile, source, statements);
+      interpreter.interpret(statements);
+      Profile.save(profile, source, statements);
+    }
+
+    exitOnError();
+  }
+
+  /**
+   * Run a whole program, first encoding it if it is kept compact.
+   * 
+   * @param statements resolved statements, or {@code null} after an error
+   */
+  private static void execute(List<Stmt> statements) {
+    if (statements == null)
+      return;
 
-    // Indicate an error in the exit code.
+    if (compact) {
+      CompactProgram program = new CompactProgram(statements);
+      // Only the encoded program stays reachable while it runs
+      statements = null;
+      program.run(interpreter);
+    } else {
+      interpreter.interpret(statements);
+    }
+  }
+
+  /**
+   * Indicate an error in the exit code.
+   */
+  private static void exitOnError() {
     if (hadError)
       System.exit(65);
     if (hadRuntimeError)
@@ -67,9 +272,12 @@ public class Lox {
     // Setup reader to read inputs from command line.
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
+    // Later lines may use anything declared so far
+    disabledPasses.add("tree-shaking");
 
     // Infinite loop to get user input
     for (;;) {
+      interpreter.output().flush();
       System.out.print("> ");
       String line = reader.readLine();
       // Stop REPL when Ctrl+C or Ctrl+D
@@ -88,26 +296,125 @@ public class Lox {
    * @param source A String input as raw source code
    */
   private static void run(String source) {
+    List<Stmt> statements = compile(source, interpreter);
+
+    // Stop if there was a syntax or resolution error.
+    if (statements == null)
+      return;
+
+    interpreter.interpret(statements);
+  }
+
+  /**
+   * Run a program one top level declaration at a time.
+   * Each declaration is resolved and executed before the next one is
+   * scanned, so its tokens and, unless a function keeps it, its tree can be
+   * collected before the rest of the program is read. Declarations run
+   * until the first error, so the ones before a syntax error have already
+   * run when it is found. The rest is still parsed and, like a whole
+   * program, resolved unless there was a syntax error, to report every
+   * error.
+   * 
+   * @param tokens scanner of the program
+   */
+  private static void runStream(TokenSource tokens) {
+    // Later declarations may use anything declared so far
+    disabledPasses.add("tree-shaking");
+
+    Parser parser = new Parser(tokens, lazy);
+    List<Stmt> statements = new ArrayList<>(1);
+    // Set once an error stops the program, the rest is only checked
+    boolean stopped = false;
+    boolean failed = false;
+    boolean syntaxError = false;
+    while (parser.hasNext()) {
+      Stmt statement = parser.next();
+      // Errors reported since the last declaration was resolved come from
+      // scanning or parsing, the scanner may have read ahead
+      syntaxError |= hadError;
+      hadError = false;
+      if (syntaxError)
+        continue;
+
+      statements.clear();
+      statements.add(statement);
+      if (stopped) {
+        new Resolver(interpreter).resolve(statements);
+        failed |= hadError;
+        hadError = false;
+        continue;
+      }
+
+      List<Stmt> resolved = resolve(statements, interpreter);
+      failed = resolved == null;
+      hadError = false;
+      stopped = failed || !interpreter.run(resolved);
+    }
+    hadError |= failed || syntaxError;
+    interpreter.output().flush();
+  }
+
+  /**
+   * Run the front end (scanner, parser and resolver) over the source code.
+   * Resolution results are stored in the given interpreter.
+   * 
+   * @param source      A String input as raw source code
+   * @param interpreter Interpreter that receives the resolved variables
+   * @return list of statements, or {@code null} if there was an error
+   */
+  static List<Stmt> compile(String source, Interpreter interpreter) {
+    if (parallel) {
+      List<Stmt> statements = ParallelParser.parse(source, lazy);
+      if (statements != null)
+        return resolve(statements, interpreter);
+      // A chunk had errors, they are reported in order by the usual path
+    }
+
     // Tranform source code into tokens
     Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
+    return compile(scanner.scanTokens(), interpreter);
+  }
+
+  /**
+   * Run the parser and resolver over scanned source code.
+   * 
+   * @param tokens      tokens of the source code
+   * @param interpreter interpreter the resolved variables are recorded in
+   * @return the statements to run, or {@code null} if there were errors
+   */
+  static List<Stmt> compile(List<Token> tokens, Interpreter interpreter) {
     // Transform tokens into statements
-    Parser parser = new Parser(tokens);
+    Parser parser = new Parser(tokens, lazy);
     List<Stmt> statements = parser.parse();
 
     // Stop if there was a syntax error;
     if (hadError)
-      return;
+      return null;
+
+    return resolve(statements, interpreter);
+  }
 
+  /**
+   * Resolve and optimize parsed statements.
+   * 
+   * @param statements  statements without syntax errors
+   * @param interpreter interpreter the resolved variables are recorded in
+   * @return the statements to run, or {@code null} if there were errors
+   */
+  private static List<Stmt> resolve(List<Stmt> statements, Interpreter interpreter) {
     Resolver resolver = new Resolver(interpreter);
     resolver.resolve(statements);
 
     // Stop if there was a resolution error.
     if (hadError) {
-      return;
+      return null;
     }
 
-    interpreter.interpret(statements);
+    if (optimize) {
+      statements = Optimizer.standard(disabledPasses).run(statements);
+    }
+
+    return statements;
   }
 
   /**
@@ -128,10 +435,47 @@ public class Lox {
    * @param message Message to the user.
    */
   private static void report(int line, String where, String message) {
+    List<Diagnostic> silenced = silencedErrors.get();
+    if (silenced != null) {
+      silenced.add(new Diagnostic(line, where, message));
+      return;
+    }
+
+    // Errors in lazily parsed bodies come after what was printed so far
+    interpreter.output().flush();
     System.err.println("[line " + line + "] Error" + where + ": " + message);
     hadError = true;
   }
 
+  /**
+   * Run a task on the current thread with the errors it finds counted
+   * instead of reported, and without setting {@code hadError}.
+   * 
+   * @param task
+   * @return count of errors found
+   */
+  static int countErrors(Runnable task) {
+    return collectErrors(task).size();
+  }
+
+  /**
+   * Run a task on the current thread with the errors it finds collected
+   * instead of reported, and without setting {@code hadError}.
+   * 
+   * @param task
+   * @return errors found, in the order they were found
+   */
+  static List<Diagnostic> collectErrors(Runnable task) {
+    List<Diagnostic> errors = new ArrayList<>();
+    silencedErrors.set(errors);
+    try {
+      task.run();
+    } finally {
+      silencedErrors.remove();
+    }
+    return errors;
+  }
+
   /**
    * Reports and error at the given token.
    * 
@@ -139,11 +483,16 @@ public class Lox {
    * @param message message to user
    */
   static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
-    }
+    error(Diagnostic.at(token, message));
+  }
+
+  /**
+   * Reports an error found earlier.
+   * 
+   * @param diagnostic
+   */
+  static void error(Diagnostic diagnostic) {
+    report(diagnostic.line, diagnostic.where, diagnostic.message);
   }
 
   /**
@@ -153,7 +502,7 @@ public class Lox {
    * @param error
    */
   static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]" + error.trace());
     hadRuntimeError = true;
   }
 }
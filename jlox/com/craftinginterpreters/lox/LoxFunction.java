@@ -3,13 +3,20 @@
 
 package com.craftinginterpreters.lox;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 class LoxFunction implements LoxCallable {
+  // Results kept per pure function before the least recently used is evicted
+  private static final int MEMO_SIZE = 1024;
+
   private final Stmt.Function declaration;
   private final Environment closure;
 
   private final boolean isInitializer;
+  // Results of earlier calls keyed by their arguments, if memoized
+  private Map<List<Object>, Object> memo = null;
 
   /**
    * Initializes the Lox function with the declaration and the closing
@@ -37,9 +44,36 @@ class LoxFunction implements LoxCallable {
     return new LoxFunction(declaration, environment, isInitializer);
   }
 
+  /**
+   * Get the declaration of the function.
+   * 
+   * @return
+   */
+  Stmt.Function declaration() {
+    return declaration;
+  }
+
+  /**
+   * Get the environment the function closes over.
+   * 
+   * @return
+   */
+  Environment closure() {
+    return closure;
+  }
+
+  /**
+   * Check if the function is an initializer for a class.
+   * 
+   * @return {@code boolean}
+   */
+  boolean isInitializer() {
+    return isInitializer;
+  }
+
   @Override
   public String toString() {
-    return "<fn " + declaration.name.lexeme + ">";
+    return "<fn " + declaration.name.lexeme() + ">";
   }
 
   @Override
@@ -47,13 +81,87 @@ class LoxFunction implements LoxCallable {
     return declaration.params.size();
   }
 
+  /**
+   * Call the function as a method of the given instance.
+   * Same as {@code bind(instance).call(...)} without creating a new function.
+   * 
+   * @param instance
+   * @param interpreter
+   * @param arguments
+   * @return
+   */
+  Object invoke(LoxInstance instance, Interpreter interpreter, List<Object> arguments) {
+    Environment environment = new Environment(closure);
+    environment.define("this", instance);
+    return call(environment, interpreter, arguments);
+  }
+
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
+    if (!Lox.memoize || isInitializer || !isValueList(arguments) || !Purity.isPure(declaration)
+        || !isOwnName())
+      return call(closure, interpreter, arguments);
+
+    if (memo == null) {
+      memo = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+          return size() > MEMO_SIZE;
+        }
+      };
+    }
+
+    if (memo.containsKey(arguments))
+      return memo.get(arguments);
+    Object result = call(closure, interpreter, arguments);
+    memo.put(arguments, result);
+    return result;
+  }
+
+  /**
+   * Check if the function's name still holds this function where it was
+   * declared. Recursive calls go through the name, so they only call the
+   * function itself while it does. Otherwise the function is not memoized.
+   * 
+   * @return {@code boolean}
+   */
+  private boolean isOwnName() {
+    return closure.getAt(0, declaration.name.lexeme()) == this;
+  }
+
+  /**
+   * Check if every argument is an immutable value that can be compared by
+   * equality: a number, string, boolean or nil.
+   * 
+   * @param arguments
+   * @return {@code boolean}
+   */
+  private static boolean isValueList(List<Object> arguments) {
+    for (Object argument : arguments) {
+      if (argument != null && !(argument instanceof Double)
+          && !(argument instanceof String) && !(argument instanceof Boolean))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Call the function body with the given closing environment.
+   * 
+   * @param closure
+   * @param interpreter
+   * @param arguments
+   * @return
+   */
+  private Object call(Environment closure, Interpreter interpreter, List<Object> arguments) {
+    if (declaration.lazy != null)
+      LazyBody.compile(declaration, interpreter);
+
     // Create a new environment for the function
     Environment environment = new Environment(closure);
     // Define all variables in the parameters
     for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+      environment.define(declaration.params.get(i).lexeme(), arguments.get(i));
     }
 
     try {
@@ -29,22 +29,34 @@ class LoxInstance {
    */
   Object get(Token name) {
     // Fields shadow methods.
-    if (fields.containsKey(name.lexeme)) {
-      return fields.get(name.lexeme);
+    if (fields.containsKey(name.lexeme())) {
+      return fields.get(name.lexeme());
     }
 
-    LoxFunction method = klass.findMethod(name.lexeme);
+    LoxFunction method = klass.findMethod(name.lexeme());
     if (method != null)
       return method.bind(this);
 
-    throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+  }
+
+  /**
+   * Find a method of the instance's class that is not shadowed by a field.
+   * 
+   * @param name
+   * @return the method, or {@code null} if a field or nothing has that name
+   */
+  LoxFunction findMethod(String name) {
+    if (fields.containsKey(name))
+      return null;
+    return klass.findMethod(name);
   }
 
   /**
    * Set a field in the instance.
    */
   void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+    fields.put(name.lexeme(), value);
   }
 
   @Override
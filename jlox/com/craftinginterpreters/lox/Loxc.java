@@ -0,0 +1,228 @@
+// Loxc.java
+// Compiles a Lox script to Java classes packaged into a runnable jar
+
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class Loxc {
+  // Package of the runtime classes copied into the jar
+  private static final String RUNTIME_PACKAGE = "com/craftinginterpreters/lox/";
+  // Classes the compiled programs run with, with their nested classes
+  private static final List<String> RUNTIME = Arrays.asList("CompiledProgram", "CompiledFunction",
+      "CompiledClass", "RuntimeError", "Token", "TokenType", "OutputSink", "NumberFormatter", "Rope",
+      "Interner");
+
+  /**
+   * Compile a script into a jar that can be started with {@code java -jar}.
+   * The script is scanned, parsed, resolved and optimized here, then
+   * generated as Java source and compiled by the Java compiler of the JDK.
+   * The jar holds the classes of the script and the small runtime they
+   * call, not the interpreter.
+   * 
+   * @param args A list of command line arguments
+   * @throws IOException If an input or output exception occurred
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("Usage: loxc [script] [output jar]");
+      System.exit(64);
+    }
+
+    String script = args[0];
+    String output = args.length == 2 ? args[1] : script.replaceFirst("\\.[^./\\\\]*$", "") + ".jar";
+
+    byte[] bytes = Files.readAllBytes(Paths.get(script));
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = Lox.compile(new String(bytes, Charset.defaultCharset()), interpreter);
+
+    // Indicate an error in the exit code.
+    if (statements == null)
+      System.exit(65);
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      System.err.println("No Java compiler found, loxc must be run by a JDK.");
+      System.exit(70);
+    }
+
+    Path runtime = runtimeLocation();
+    String source = new JavaGenerator().generate(statements);
+    Map<String, byte[]> classes = compileJava(compiler, source, runtime);
+    if (classes == null)
+      System.exit(70);
+
+    writeJar(Paths.get(output), runtime, classes);
+  }
+
+  /**
+   * Compile the generated source in memory.
+   * Errors of the Java compiler are printed to the standard error.
+   * 
+   * @param compiler
+   * @param source   source of the generated class
+   * @param runtime  where the runtime classes are
+   * @return the bytecode of each class by name, or {@code null} on errors
+   */
+  private static Map<String, byte[]> compileJava(JavaCompiler compiler, String source, Path runtime)
+      throws IOException {
+    Map<String, ByteArrayOutputStream> outputs = new TreeMap<>();
+    StandardJavaFileManager files = compiler.getStandardFileManager(null, null, null);
+    JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(files) {
+      @Override
+      public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+          FileObject sibling) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        outputs.put(className, bytes);
+        return new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + kind.extension),
+            kind) {
+          @Override
+          public OutputStream openOutputStream() {
+            return bytes;
+          }
+        };
+      }
+    };
+
+    String name = RUNTIME_PACKAGE + JavaGenerator.CLASS_NAME + JavaFileObject.Kind.SOURCE.extension;
+    JavaFileObject file = new SimpleJavaFileObject(URI.create("memory:///" + name), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+
+    List<String> options = Arrays.asList("-classpath", runtime.toString(), "-nowarn");
+    boolean compiled;
+    try (JavaFileManager closing = manager) {
+      compiled = compiler.getTask(null, manager, null, options, null, Arrays.asList(file)).call();
+    }
+    if (!compiled)
+      return null;
+
+    Map<String, byte[]> classes = new TreeMap<>();
+    for (Map.Entry<String, ByteArrayOutputStream> output : outputs.entrySet()) {
+      classes.put(output.getKey(), output.getValue().toByteArray());
+    }
+    return classes;
+  }
+
+  /**
+   * Write the runtime classes and the compiled program into a jar.
+   * 
+   * @param path    path of the jar
+   * @param runtime where the runtime classes are
+   * @param classes bytecode of the program by class name
+   * @throws IOException
+   */
+  private static void writeJar(Path path, Path runtime, Map<String, byte[]> classes) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS,
+        RUNTIME_PACKAGE.replace('/', '.') + JavaGenerator.CLASS_NAME);
+
+    try (OutputStream file = Files.newOutputStream(path);
+        JarOutputStream jar = new JarOutputStream(file, manifest)) {
+      copyRuntime(jar, runtime);
+
+      for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+        jar.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+        jar.write(entry.getValue());
+        jar.closeEntry();
+      }
+    }
+  }
+
+  /**
+   * Find where loxc itself was loaded from, a class directory or a jar.
+   * 
+   * @return {@code Path}
+   * @throws IOException
+   */
+  private static Path runtimeLocation() throws IOException {
+    try {
+      return Paths.get(Loxc.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException error) {
+      throw new IOException("Cannot locate the Lox runtime.", error);
+    }
+  }
+
+  /**
+   * Check whether a class file belongs to the runtime.
+   * 
+   * @param fileName name of the class file, without its directory
+   * @return {@code boolean}
+   */
+  private static boolean isRuntime(String fileName) {
+    if (!fileName.endsWith(".class"))
+      return false;
+    String name = fileName.substring(0, fileName.length() - ".class".length());
+    int nested = name.indexOf('$');
+    return RUNTIME.contains(nested < 0 ? name : name.substring(0, nested));
+  }
+
+  /**
+   * Copy the runtime classes from wherever loxc itself was loaded.
+   * Works both from a class directory and from a jar.
+   * 
+   * @param jar
+   * @param location
+   * @throws IOException
+   */
+  private static void copyRuntime(JarOutputStream jar, Path location) throws IOException {
+    if (Files.isDirectory(location)) {
+      Path runtime = location.resolve(RUNTIME_PACKAGE);
+      try (Stream<Path> classes = Files.list(runtime)) {
+        for (Path source : (Iterable<Path>) classes::iterator) {
+          if (!isRuntime(source.getFileName().toString()))
+            continue;
+          jar.putNextEntry(new JarEntry(RUNTIME_PACKAGE + source.getFileName()));
+          Files.copy(source, jar);
+          jar.closeEntry();
+        }
+      }
+      return;
+    }
+
+    try (JarFile source = new JarFile(location.toFile())) {
+      Enumeration<JarEntry> entries = source.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (!name.startsWith(RUNTIME_PACKAGE) || !isRuntime(name.substring(RUNTIME_PACKAGE.length())))
+          continue;
+        jar.putNextEntry(new JarEntry(name));
+        source.getInputStream(entry).transferTo(jar);
+        jar.closeEntry();
+      }
+    }
+  }
+}
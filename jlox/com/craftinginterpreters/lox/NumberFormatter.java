@@ -0,0 +1,48 @@
+// NumberFormatter.java
+// Formats Lox numbers the way they are printed.
+
+package com.craftinginterpreters.lox;
+
+class NumberFormatter {
+  // Double.toString switches to scientific notation from here on
+  private static final double SCIENTIFIC = 1e7;
+
+  private NumberFormatter() {
+  }
+
+  /**
+   * Format a number.
+   * 
+   * @param value
+   * @return {@code String}
+   */
+  static String format(double value) {
+    StringBuilder builder = new StringBuilder(24);
+    append(builder, value);
+    return builder.toString();
+  }
+
+  /**
+   * Append a number to a buffer.
+   * Integers print without a fraction. Everything else prints exactly as
+   * {@code Double.toString} does, the shortest text that reads back as the
+   * same number.
+   * 
+   * @param out
+   * @param value
+   */
+  static void append(StringBuilder out, double value) {
+    // Integral fast path, the digits are written directly
+    long integer = (long) value;
+    if (integer == value && Math.abs(value) < SCIENTIFIC) {
+      if (integer == 0 && 1 / value < 0) {
+        out.append("-0");
+      } else {
+        out.append(integer);
+      }
+      return;
+    }
+
+    out.append(Double.toString(value));
+  }
+}
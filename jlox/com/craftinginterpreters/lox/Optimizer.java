@@ -0,0 +1,86 @@
+// Optimizer.java
+// Pipeline of optimization passes run between the resolver and the interpreter.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+class Optimizer {
+  private final List<Pass> passes = new ArrayList<>();
+
+  /**
+   * Create every pass in the order they run.
+   * Groupings are dropped first so folding sees literals directly, and dead
+   * code is pruned before unused declarations are looked for and patterns
+   * are fused. Loops go last since they hoist fused nodes and nothing after
+   * them may rebuild a loop. Types only annotate the final tree.
+   * 
+   * @return
+   */
+  static List<Pass> allPasses() {
+    return Arrays.asList(
+        new GroupingElimination(),
+        new ConstantFolding(),
+        new DeadCodeElimination(),
+        new TreeShaking(),
+        new Superinstructions(),
+        new LoopOptimization(),
+        new TypeInference());
+  }
+
+  /**
+   * Build the pipeline of all passes that are not disabled.
+   * 
+   * @param disabled names of the passes to skip
+   * @return
+   */
+  static Optimizer standard(Set<String> disabled) {
+    Optimizer optimizer = new Optimizer();
+    for (Pass pass : allPasses()) {
+      if (!disabled.contains(pass.name()))
+        optimizer.add(pass);
+    }
+    return optimizer;
+  }
+
+  /**
+   * Check if there is a pass with the given name.
+   * 
+   * @param name
+   * @return {@code boolean}
+   */
+  static boolean isPass(String name) {
+    for (Pass pass : allPasses()) {
+      if (pass.name().equals(name))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Append a pass to the pipeline.
+   * 
+   * @param pass
+   * @return this optimizer
+   */
+  Optimizer add(Pass pass) {
+    passes.add(pass);
+    return this;
+  }
+
+  /**
+   * Run each pass in order over the program.
+   * 
+   * @param statements
+   * @return the optimized statements
+   */
+  List<Stmt> run(List<Stmt> statements) {
+    for (Pass pass : passes) {
+      statements = pass.run(statements);
+    }
+    return statements;
+  }
+}
@@ -0,0 +1,145 @@
+// OutputSink.java
+// Buffered destination of the output of print statements.
+
+package com.craftinginterpreters.lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class OutputSink {
+  // Characters buffered before they are written to the target
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Writer target;
+  private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+  // Set when the target failed, the rest of the output is dropped
+  private boolean failed = false;
+
+  /**
+   * Initialize the sink with the writer the output ends up in.
+   * 
+   * @param target
+   */
+  OutputSink(Writer target) {
+    this.target = target;
+  }
+
+  /**
+   * Create a sink writing to the standard output.
+   * It writes to the file descriptor directly, without going through the
+   * synchronized {@code System.out}.
+   * 
+   * @return
+   */
+  static OutputSink stdout() {
+    return new OutputSink(new OutputStreamWriter(
+        new FileOutputStream(FileDescriptor.out), Charset.defaultCharset()));
+  }
+
+  /**
+   * Create a sink writing to a file through a file channel.
+   * The file is created or truncated.
+   * 
+   * @param path
+   * @return
+   * @throws IOException If the file can't be opened
+   */
+  static OutputSink file(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    return new OutputSink(Channels.newWriter(channel, Charset.defaultCharset()));
+  }
+
+  /**
+   * Create a sink keeping the output in memory, read back with
+   * {@code toString()}.
+   * 
+   * @return
+   */
+  static OutputSink memory() {
+    return new OutputSink(new StringWriter());
+  }
+
+  /**
+   * Append text.
+   * 
+   * @param text
+   * @return this sink
+   */
+  OutputSink append(CharSequence text) {
+    buffer.append(text);
+    if (buffer.length() >= BUFFER_SIZE)
+      drain();
+    return this;
+  }
+
+  /**
+   * Append a number formatted the way Lox prints it.
+   * 
+   * @param value
+   * @return this sink
+   */
+  OutputSink append(double value) {
+    NumberFormatter.append(buffer, value);
+    if (buffer.length() >= BUFFER_SIZE)
+      drain();
+    return this;
+  }
+
+  /**
+   * End the current line.
+   * 
+   * @return this sink
+   */
+  OutputSink newline() {
+    return append(System.lineSeparator());
+  }
+
+  /**
+   * Write everything buffered and flush the target.
+   * Called when the program ends or fails and before the REPL prompts.
+   */
+  void flush() {
+    drain();
+    if (failed)
+      return;
+    try {
+      target.flush();
+    } catch (IOException error) {
+      failed = true;
+    }
+  }
+
+  /**
+   * Write the buffer to the target without flushing it.
+   * Like {@code System.out}, a failing target doesn't stop the program.
+   */
+  private void drain() {
+    if (!failed && buffer.length() > 0) {
+      try {
+        target.append(buffer);
+      } catch (IOException error) {
+        failed = true;
+      }
+    }
+    buffer.setLength(0);
+  }
+
+  /**
+   * Get the output written so far to an in-memory sink.
+   */
+  @Override
+  public String toString() {
+    flush();
+    return target.toString();
+  }
+}
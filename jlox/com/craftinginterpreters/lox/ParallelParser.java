@@ -0,0 +1,186 @@
+// ParallelParser.java
+// Scans and parses chunks of a large source concurrently.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+class ParallelParser {
+  // Sources are split in chunks of at least this many characters
+  private static final int MIN_CHUNK = 256 << 10;
+  // Chunks per thread, so threads finishing early pick up more work
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private ParallelParser() {
+  }
+
+  /**
+   * A part of the source made of whole top level declarations.
+   */
+  private static class Chunk extends RecursiveAction {
+    final String source;
+    final int start;
+    final int end;
+    final int line;
+    final boolean lazy;
+    List<Stmt> statements;
+    int errors;
+
+    Chunk(String source, int start, int end, int line, boolean lazy) {
+      this.source = source;
+      this.start = start;
+      this.end = end;
+      this.line = line;
+      this.lazy = lazy;
+    }
+
+    @Override
+    protected void compute() {
+      errors = Lox.countErrors(() -> {
+        List<Token> tokens = new Scanner(source, start, end, line).scanTokens();
+        statements = new Parser(tokens, lazy).parse();
+      });
+    }
+  }
+
+  /**
+   * Scan and parse a source, splitting it in chunks parsed on the common
+   * fork-join pool. The statements of the chunks are joined in order.
+   * Errors aren't reported: recovering from a syntax error can depend on
+   * what follows the end of a chunk, so a source with errors has to be
+   * parsed again as a whole to report them the usual way.
+   * 
+   * @param source
+   * @param lazy   whether top level function bodies are parsed on first call
+   * @return the statements, or {@code null} if there were errors
+   */
+  static List<Stmt> parse(String source, boolean lazy) {
+    int threads = ForkJoinPool.getCommonPoolParallelism();
+    int size = Math.max(MIN_CHUNK, source.length() / (threads * CHUNKS_PER_THREAD));
+
+    List<Chunk> chunks = new ArrayList<>();
+    int start = 0;
+    int line = 1;
+    for (int[] boundary : boundaries(source, size)) {
+      chunks.add(new Chunk(source, start, boundary[0], line, lazy));
+      start = boundary[0];
+      line = boundary[1];
+    }
+    chunks.add(new Chunk(source, start, source.length(), line, lazy));
+
+    if (chunks.size() == 1) {
+      chunks.get(0).compute();
+    } else {
+      ForkJoinTask.invokeAll(chunks);
+    }
+
+    List<Stmt> statements = new ArrayList<>();
+    for (Chunk chunk : chunks) {
+      if (chunk.errors > 0)
+        return null;
+      statements.addAll(chunk.statements);
+    }
+    return statements;
+  }
+
+  /**
+   * Find where the source can be split, about every {@code size} characters.
+   * A chunk can start on the line after a ";" or "}" ending a top level
+   * statement, unless the next line goes on with "else". Strings and
+   * comments are skipped so brackets in them aren't counted. After an
+   * unbalanced closing bracket the rest of the source stays in one chunk.
+   * 
+   * @param source
+   * @param size
+   * @return offset and line of the start of each chunk but the first
+   */
+  private static List<int[]> boundaries(String source, int size) {
+    List<int[]> boundaries = new ArrayList<>();
+    int length = source.length();
+    int next = size;
+    int depth = 0;
+    int line = 1;
+    char last = '\0';
+
+    for (int i = 0; i < length; i++) {
+      char c = source.charAt(i);
+      switch (c) {
+        case '\n':
+          line++;
+          if (i >= next && depth == 0 && (last == ';' || last == '}') && !startsWithElse(source, i + 1)) {
+            boundaries.add(new int[] { i + 1, line });
+            next = i + 1 + size;
+          }
+          continue;
+        case ' ':
+        case '\r':
+        case '\t':
+          continue;
+        case '"':
+          // Strings can span lines
+          for (i++; i < length && source.charAt(i) != '"'; i++) {
+            if (source.charAt(i) == '\n')
+              line++;
+          }
+          break;
+        case '/':
+          if (i + 1 < length && source.charAt(i + 1) == '/') {
+            // Leave the newline to the loop
+            while (i + 1 < length && source.charAt(i + 1) != '\n')
+              i++;
+            continue;
+          }
+          if (i + 1 < length && source.charAt(i + 1) == '*') {
+            int comments = 1;
+            for (i += 2; i < length && comments > 0; i++) {
+              if (source.charAt(i) == '\n') {
+                line++;
+              } else if (source.startsWith("/*", i)) {
+                comments++;
+                i++;
+              } else if (source.startsWith("*/", i)) {
+                comments--;
+                i++;
+              }
+            }
+            i--;
+            continue;
+          }
+          break;
+        case '(':
+        case '{':
+          depth++;
+          break;
+        case ')':
+        case '}':
+          if (--depth < 0)
+            return boundaries;
+          break;
+      }
+      last = c;
+    }
+    return boundaries;
+  }
+
+  /**
+   * Check if the next word in the source is "else".
+   * 
+   * @param source
+   * @param from
+   * @return {@code boolean}
+   */
+  private static boolean startsWithElse(String source, int from) {
+    int i = from;
+    while (i < source.length() && Character.isWhitespace(source.charAt(i)))
+      i++;
+    if (!source.startsWith("else", i))
+      return false;
+    int after = i + "else".length();
+    return after >= source.length()
+        || (!Character.isLetterOrDigit(source.charAt(after)) && source.charAt(after) != '_');
+  }
+}
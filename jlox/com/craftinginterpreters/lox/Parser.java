@@ -4,18 +4,53 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
 class Parser {
   // Sentinel class to unwind the parser
-  private static class ParseError extends RuntimeException {
+  static class ParseError extends RuntimeException {
+  }
+
+  // Precedence of the operators, from loosest to tightest
+  private static final int PREC_NONE = 0;
+  static final int PREC_OR = 1;
+  private static final int PREC_AND = 2;
+  private static final int PREC_EQUALITY = 3;
+  private static final int PREC_COMPARISON = 4;
+  private static final int PREC_TERM = 5;
+  private static final int PREC_FACTOR = 6;
+  static final int PREC_UNARY = 7;
+  private static final int PREC_CALL = 8;
+
+  // Precedence of the tokens continuing an expression, indexed by token type.
+  // The other tokens are left at PREC_NONE.
+  static final int[] infixPrecedence = new int[TokenType.values().length];
+  static {
+    infixPrecedence[OR.ordinal()] = PREC_OR;
+    infixPrecedence[AND.ordinal()] = PREC_AND;
+    infixPrecedence[BANG_EQUAL.ordinal()] = PREC_EQUALITY;
+    infixPrecedence[EQUAL_EQUAL.ordinal()] = PREC_EQUALITY;
+    infixPrecedence[GREATER.ordinal()] = PREC_COMPARISON;
+    infixPrecedence[GREATER_EQUAL.ordinal()] = PREC_COMPARISON;
+    infixPrecedence[LESS.ordinal()] = PREC_COMPARISON;
+    infixPrecedence[LESS_EQUAL.ordinal()] = PREC_COMPARISON;
+    infixPrecedence[MINUS.ordinal()] = PREC_TERM;
+    infixPrecedence[PLUS.ordinal()] = PREC_TERM;
+    infixPrecedence[SLASH.ordinal()] = PREC_FACTOR;
+    infixPrecedence[STAR.ordinal()] = PREC_FACTOR;
+    infixPrecedence[LEFT_PAREN.ordinal()] = PREC_CALL;
+    infixPrecedence[DOT.ordinal()] = PREC_CALL;
   }
 
   private final List<Token> tokens;
   private int current = 0; // Current position of Parser in token list
+  // Tokens are pulled from here as they are needed, null if all are in the list
+  private final TokenSource source;
+  // Defer the bodies of top level functions and methods to their first call
+  private final boolean lazy;
+  private int blocks = 0; // Number of blocks the parser is in
 
   /**
    * Initializes the Parser with the list of tokens.
@@ -23,7 +58,32 @@ class Parser {
    * @param tokens
    */
   Parser(List<Token> tokens) {
+    this(tokens, false);
+  }
+
+  /**
+   * Initializes the Parser with the list of tokens.
+   * 
+   * @param tokens
+   * @param lazy   whether top level function bodies are parsed on first call
+   */
+  Parser(List<Token> tokens, boolean lazy) {
     this.tokens = tokens;
+    this.source = null;
+    this.lazy = lazy;
+  }
+
+  /**
+   * Initializes the Parser with a scanner handing out tokens on demand.
+   * Only the tokens of the declaration being parsed are kept.
+   * 
+   * @param source
+   * @param lazy   whether top level function bodies are parsed on first call
+   */
+  Parser(TokenSource source, boolean lazy) {
+    this.tokens = new ArrayList<>();
+    this.source = source;
+    this.lazy = lazy;
   }
 
   /**
@@ -43,6 +103,40 @@ class Parser {
     return statements;
   }
 
+  /**
+   * Check if there is another top level declaration to parse.
+   * 
+   * @return {@code boolean}
+   */
+  boolean hasNext() {
+    return !isAtEnd();
+  }
+
+  /**
+   * Parse the next top level declaration.
+   * The tokens it was made of are dropped, except the last one.
+   * 
+   * @return the declaration, or {@code null} if it had a syntax error
+   */
+  Stmt next() {
+    Stmt statement = declaration();
+    if (source != null && current > 1) {
+      tokens.subList(0, current - 1).clear();
+      current = 1;
+    }
+    return statement;
+  }
+
+  /**
+   * Get how many tokens were consumed so far. Only parsers over a list of
+   * tokens keep counting from the first one.
+   * 
+   * @return index of the next token in the list
+   */
+  int position() {
+    return current;
+  }
+
   /**
    * Parse the expression grammar rule
    * <p>
@@ -68,7 +162,7 @@ class Parser {
       if (match(FUN))
         // Parse funDecl
         // funDecl -> "fun" function
-        return function("function");
+        return function("function", false);
       if (match(VAR))
         return varDeclaration();
 
@@ -99,7 +193,7 @@ class Parser {
 
     List<Stmt.Function> methods = new ArrayList<>();
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      methods.add(function("method"));
+      methods.add(function("method", superclass != null));
     }
 
     consume(RIGHT_BRACE, "Expect '}' after class body.");
@@ -134,6 +228,7 @@ class Parser {
 
   /**
    * Parse the forStmt grammar rule.
+   * The loop is kept as its own node so it can be optimized as a whole.
    * <p>
    * forStmt -> "for" "(" (varDecl | exprStmt | ";") expression? ";" expression?
    * ")" statement
@@ -165,22 +260,7 @@ class Parser {
     consume(RIGHT_PAREN, "Expect ')' after for clauses.");
     Stmt body = statement();
 
-    if (increment != null) {
-      body = new Stmt.Block(
-          Arrays.asList(
-              body, new Stmt.Expression(increment)));
-    }
-
-    if (condition == null) {
-      condition = new Expr.Literal(true);
-    }
-    body = new Stmt.While(condition, body);
-
-    if (initializer != null) {
-      body = new Stmt.Block(Arrays.asList(initializer, body));
-    }
-
-    return body;
+    return new Stmt.For(initializer, condition, increment, body);
   }
 
   /**
@@ -293,7 +373,7 @@ class Parser {
    * @param kind
    * @return
    */
-  private Stmt.Function function(String kind) {
+  private Stmt.Function function(String kind, boolean hasSuperclass) {
     Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
     consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
     List<Token> parameters = new ArrayList<>();
@@ -309,6 +389,16 @@ class Parser {
     consume(RIGHT_PAREN, "Expect ')' after parameters.");
 
     consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+    if (lazy && blocks == 0) {
+      // Only the tree and the resolution of the body wait for the first call
+      Stmt.Function function = new Stmt.Function(name, parameters, new ArrayList<>());
+      int start = current;
+      List<Diagnostic> errors = Recognizer.checkBody(this, name, parameters, kind.equals("method"), hasSuperclass);
+      List<Token> body = new ArrayList<>(tokens.subList(start, current - 1));
+      body.add(new Token(EOF, "", null, previous().line));
+      function.lazy = new LazyBody(body, kind.equals("method"), hasSuperclass, errors);
+      return function;
+    }
     List<Stmt> body = block();
     return new Stmt.Function(name, parameters, body);
   }
@@ -323,9 +413,11 @@ class Parser {
   private List<Stmt> block() {
     List<Stmt> statements = new ArrayList<>();
 
+    blocks++;
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
       statements.add(declaration());
     }
+    blocks--;
 
     consume(RIGHT_BRACE, "Expect '}' after block.");
     return statements;
@@ -339,7 +431,7 @@ class Parser {
    * @return
    */
   private Expr assignment() {
-    Expr expr = or();
+    Expr expr = parsePrecedence(PREC_OR);
 
     if (match(EQUAL)) {
       Token equals = previous();
@@ -360,117 +452,56 @@ class Parser {
   }
 
   /**
-   * Parse the logic_or grammar rule.
+   * Parse an expression whose operators bind at least as tightly as the
+   * given precedence. This covers the grammar rules from logic_or down to
+   * call, the operators are looked up in a table instead of going through
+   * one method per level.
    * <p>
    * logic_or -> logic_and ("or" logic_and)*
-   * 
-   * @return
-   */
-  private Expr or() {
-    Expr expr = and();
-
-    while (match(OR)) {
-      Token operator = previous();
-      Expr right = and();
-      expr = new Expr.Logical(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  /**
-   * Parse the logic_and grammar rule.
    * <p>
    * logic_and -> equality ("and" equality)*
-   * 
-   * @return
-   */
-  private Expr and() {
-    Expr expr = equality();
-
-    while (match(AND)) {
-      Token operator = previous();
-      Expr right = equality();
-      expr = new Expr.Logical(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  /**
-   * Parse the equality grammar rule.
    * <p>
    * equality -> comparison (("!=" | "==") comparison)*
-   * 
-   * @return
-   */
-  private Expr equality() {
-    Expr expr = comparison();
-
-    while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-      Token operator = previous();
-      Expr right = comparison();
-      expr = new Expr.Binary(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  /**
-   * Parse the comparison grammar rule.
    * <p>
    * comparison -> term ((">" | ">=" | "<" | "<=") term)*
-   * 
-   * @return
-   */
-  private Expr comparison() {
-    Expr expr = term();
-
-    while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-      Token operator = previous();
-      Expr right = term();
-      expr = new Expr.Binary(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  /**
-   * Parse the term grammar rule.
    * <p>
    * term -> factor (("-" | "+") factor)*
-   * 
-   * @return
-   */
-  private Expr term() {
-    Expr expr = factor();
-
-    while (match(MINUS, PLUS)) {
-      Token operator = previous();
-      Expr right = factor();
-      expr = new Expr.Binary(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  /**
-   * Parse the factor grammar rule.
    * <p>
    * factor -> unary (("/" | "*") unary)*
+   * <p>
+   * call -> primary ("(" arguments? ")" | "." IDENTIFIER)*
    * 
+   * @param precedence lowest precedence of the operators to parse
    * @return
    */
-  private Expr factor() {
+  private Expr parsePrecedence(int precedence) {
     Expr expr = unary();
 
-    while (match(SLASH, STAR)) {
-      Token operator = previous();
-      Expr right = unary();
-      expr = new Expr.Binary(expr, operator, right);
-    }
+    for (;;) {
+      Token operator = peek();
+      int infix = infixPrecedence[operator.type.ordinal()];
+      if (infix < precedence)
+        return expr;
+      advance();
 
-    return expr;
+      switch (operator.type) {
+        case LEFT_PAREN:
+          expr = finishCall(expr);
+          break;
+        case DOT:
+          Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+          expr = new Expr.Get(expr, name);
+          break;
+        case OR:
+        case AND:
+          // Left associative, the right operand binds one level tighter
+          expr = new Expr.Logical(expr, operator, parsePrecedence(infix + 1));
+          break;
+        default:
+          expr = new Expr.Binary(expr, operator, parsePrecedence(infix + 1));
+          break;
+      }
+    }
   }
 
   /**
@@ -481,13 +512,14 @@ class Parser {
    * @return
    */
   private Expr unary() {
-    if (match(BANG, MINUS)) {
-      Token operator = previous();
-      Expr right = unary();
+    TokenType type = peek().type;
+    if (type == BANG || type == MINUS) {
+      Token operator = advance();
+      Expr right = parsePrecedence(PREC_UNARY);
       return new Expr.Unary(operator, right);
     }
 
-    return call();
+    return primary();
   }
 
   /**
@@ -514,30 +546,6 @@ class Parser {
     return new Expr.Call(callee, paren, arguments);
   }
 
-  /**
-   * Parse the call grammar rule.
-   * <p>
-   * call -> primary ("(" arguments? ")" | "." IDENTIFIER)*
-   * 
-   * @return
-   */
-  private Expr call() {
-    Expr expr = primary();
-
-    while (true) {
-      if (match(LEFT_PAREN)) {
-        expr = finishCall(expr);
-      } else if (match(DOT)) {
-        Token name = consume(IDENTIFIER, "Expect property name after '.'.");
-        expr = new Expr.Get(expr, name);
-      } else {
-        break;
-      }
-    }
-
-    return expr;
-  }
-
   /**
    * Parse primary grammar rule.
    * <p>
@@ -547,58 +555,62 @@ class Parser {
    * @return
    */
   private Expr primary() {
-    if (match(FALSE))
-      return new Expr.Literal(false);
-    if (match(TRUE))
-      return new Expr.Literal(true);
-    if (match(NIL))
-      return new Expr.Literal(null);
-
-    if (match(NUMBER, STRING)) {
-      return new Expr.Literal(previous().literal);
-    }
-
-    if (match(SUPER)) {
-      Token keyword = previous();
-      consume(DOT, "Expect '.' after 'super'.");
-      Token method = consume(IDENTIFIER, "Expect superclass method name.");
-      return new Expr.Super(keyword, method);
-    }
-
-    if (match(THIS))
-      return new Expr.This(previous());
-
-    if (match(IDENTIFIER)) {
-      return new Expr.Variable(previous());
-    }
-
-    if (match(LEFT_PAREN)) {
-      Expr expr = expression();
-      consume(RIGHT_PAREN, "Expect ')' after expression.");
-      return new Expr.Grouping(expr);
+    Token token = peek();
+    switch (token.type) {
+      case FALSE:
+        advance();
+        return new Expr.Literal(false);
+      case TRUE:
+        advance();
+        return new Expr.Literal(true);
+      case NIL:
+        advance();
+        return new Expr.Literal(null);
+      case NUMBER:
+      case STRING:
+        advance();
+        return new Expr.Literal(token.literal);
+      case SUPER: {
+        advance();
+        consume(DOT, "Expect '.' after 'super'.");
+        Token method = consume(IDENTIFIER, "Expect superclass method name.");
+        return new Expr.Super(token, method);
+      }
+      case THIS:
+        advance();
+        return new Expr.This(token);
+      case IDENTIFIER:
+        advance();
+        return new Expr.Variable(token);
+      case LEFT_PAREN: {
+        advance();
+        Expr expr = expression();
+        consume(RIGHT_PAREN, "Expect ')' after expression.");
+        return new Expr.Grouping(expr);
+      }
+      default:
+        throw error(token, "Expect expression.");
     }
-
-    throw error(peek(), "Expect expression.");
   }
 
+
   /**
-   * Check the current token if it matches any given input types.
+   * Check if the current token has the given type.
    * The token is consumed if true.
    * 
-   * @param types
+   * @param type
    * @return {@code boolean}
    */
-  private boolean match(TokenType... types) {
-    for (TokenType type : types) {
-      if (check(type)) {
-        advance();
-        return true;
-      }
+  boolean match(TokenType type) {
+    if (check(type)) {
+      advance();
+      return true;
     }
 
     return false;
   }
 
+
   /**
    * Consume the next token if it matches the expected type.
    * Otherwise, an error is thrown.
@@ -607,7 +619,7 @@ class Parser {
    * @param message message for the user if not expected type
    * @return token
    */
-  private Token consume(TokenType type, String message) {
+  Token consume(TokenType type, String message) {
     if (check(type))
       return advance();
 
@@ -620,7 +632,7 @@ class Parser {
    * @param type
    * @return {@code boolean}
    */
-  private boolean check(TokenType type) {
+  boolean check(TokenType type) {
     if (isAtEnd())
       return false;
     return peek().type == type;
@@ -632,7 +644,7 @@ class Parser {
    * 
    * @return token
    */
-  private Token advance() {
+  Token advance() {
     if (!isAtEnd())
       current++;
     return previous();
@@ -643,7 +655,7 @@ class Parser {
    * 
    * @return {@code boolean}
    */
-  private boolean isAtEnd() {
+  boolean isAtEnd() {
     return peek().type == EOF;
   }
 
@@ -652,7 +664,11 @@ class Parser {
    * 
    * @return token
    */
-  private Token peek() {
+  Token peek() {
+    if (source != null) {
+      while (current >= tokens.size())
+        tokens.add(source.nextToken());
+    }
     return tokens.get(current);
   }
 
@@ -661,7 +677,7 @@ class Parser {
    * 
    * @return token
    */
-  private Token previous() {
+  Token previous() {
     return tokens.get(current - 1);
   }
 
@@ -673,7 +689,7 @@ class Parser {
    * @param message message to the user
    * @return {@code ParseError}
    */
-  private ParseError error(Token token, String message) {
+  ParseError error(Token token, String message) {
     Lox.error(token, message);
     return new ParseError();
   }
@@ -683,7 +699,7 @@ class Parser {
    * Synchronization point is between statements.
    * Detected by finding a semicolon or a keyword.
    */
-  private void synchronize() {
+  void synchronize() {
     advance();
 
     while (!isAtEnd()) {
@@ -0,0 +1,23 @@
+// Pass.java
+// Interface for an optimization pass over the resolved syntax tree.
+
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+interface Pass {
+  /**
+   * Name used to switch the pass off from the command line.
+   * 
+   * @return
+   */
+  String name();
+
+  /**
+   * Transform the resolved program.
+   * 
+   * @param statements
+   * @return the transformed statements
+   */
+  List<Stmt> run(List<Stmt> statements);
+}
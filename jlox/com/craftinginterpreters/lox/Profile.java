@@ -0,0 +1,203 @@
+// Profile.java
+// Saves the runtime profile of a script and restores it on the next run.
+
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class Profile {
+  // Operand types observed by "+"
+  static final int NUMBERS = 1;
+  static final int STRINGS = 2;
+
+  private static final String HEADER = "lox-profile";
+
+  /**
+   * Restore a saved profile into the call sites and operators of a program.
+   * The profile is ignored if it is missing or was saved for other source.
+   * It is only a hint, so malformed lines are skipped.
+   * 
+   * @param path       profile file
+   * @param source     source code of the program
+   * @param statements resolved program
+   * @throws IOException If the profile exists but can't be read
+   */
+  static void load(Path path, String source, List<Stmt> statements) throws IOException {
+    Map<String, Object> sites = new Sites().collect(statements);
+
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      if (header == null || !header.equals(HEADER + " " + hash(source)))
+        return;
+
+      String line;
+      while ((line = reader.readLine()) != null)
+        restore(sites, line);
+    } catch (NoSuchFileException error) {
+      // First run, start from cold.
+    } catch (CharacterCodingException error) {
+      // Not a profile, start from cold.
+    }
+  }
+
+  /**
+   * Restore one line of a profile, unless it is malformed.
+   * 
+   * @param sites sites of the program by location
+   * @param line
+   */
+  private static void restore(Map<String, Object> sites, String line) {
+    String[] parts = line.split(" ");
+    if (parts.length < 3)
+      return;
+
+    Object site = sites.get(parts[0] + " " + parts[1]);
+    try {
+      if (site instanceof CallSite && parts.length == 4) {
+        CallSite callSite = (CallSite) site;
+        // Only reaching the threshold matters, don't let counts overflow
+        long calls = Long.parseLong(parts[2]);
+        callSite.calls = (int) Math.max(0, Math.min(calls, CallSite.INLINE_THRESHOLD));
+        callSite.megamorphic = parts[3].equals("megamorphic");
+        callSite.notInlinable = parts[3].equals("notinlinable");
+      } else if (site instanceof Expr.Binary && parts.length == 3) {
+        ((Expr.Binary) site).seen = Integer.parseInt(parts[2]) & (NUMBERS | STRINGS);
+      }
+    } catch (NumberFormatException error) {
+      // Corrupted line, leave the site cold.
+    }
+  }
+
+  /**
+   * Save the profile collected while running a program.
+   * 
+   * @param path       profile file
+   * @param source     source code of the program
+   * @param statements resolved program
+   * @throws IOException If the profile can't be written
+   */
+  static void save(Path path, String source, List<Stmt> statements) throws IOException {
+    Map<String, Object> sites = new Sites().collect(statements);
+
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+      writer.println(HEADER + " " + hash(source));
+      for (Map.Entry<String, Object> entry : sites.entrySet()) {
+        Object site = entry.getValue();
+        if (site instanceof CallSite) {
+          CallSite callSite = (CallSite) site;
+          if (callSite.calls == 0)
+            continue;
+          writer.println(entry.getKey() + " " + callSite.calls + " " + state(callSite));
+        } else {
+          Expr.Binary binary = (Expr.Binary) site;
+          if (binary.seen == 0)
+            continue;
+          writer.println(entry.getKey() + " " + binary.seen);
+        }
+      }
+    }
+  }
+
+  /**
+   * Describe the inline cache state of a call site.
+   * 
+   * @param site
+   * @return
+   */
+  private static String state(CallSite site) {
+    if (site.megamorphic)
+      return "megamorphic";
+    if (site.notInlinable)
+      return "notinlinable";
+    if (site.inlined != null)
+      return "inlined";
+    return "monomorphic";
+  }
+
+  /**
+   * Hash the source code so profiles of other versions of a script are ignored.
+   * 
+   * @param source
+   * @return hexadecimal digest
+   */
+  static String hash(String source) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(source.getBytes(StandardCharsets.UTF_8));
+      StringBuilder builder = new StringBuilder();
+      for (byte b : digest) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException error) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(error);
+    }
+  }
+
+  /**
+   * Collects the profiled nodes of a program keyed by source location.
+   * The key is the line along with the order of the node on that line, so
+   * it is the same on every run of the same source.
+   */
+  private static class Sites extends AstRewriter {
+    private final Map<String, Object> sites = new LinkedHashMap<>();
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    /**
+     * Walk the program and collect its call sites and operators.
+     * 
+     * @param statements
+     * @return profiled nodes keyed by location
+     */
+    Map<String, Object> collect(List<Stmt> statements) {
+      rewrite(statements);
+      return sites;
+    }
+
+    /**
+     * Add a node under the next free key for its line.
+     * 
+     * @param kind
+     * @param line
+     * @param site
+     */
+    private void add(String kind, int line, Object site) {
+      String location = kind + " " + line;
+      int count = counts.merge(location, 1, Integer::sum);
+      sites.put(location + ":" + count, site);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+      if (expr.operator.type == TokenType.PLUS)
+        add("binary", expr.operator.line, expr);
+      return super.visitBinaryExpr(expr);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+      add("call", expr.paren.line, expr.site);
+      return super.visitCallExpr(expr);
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Expr.Invoke expr) {
+      add("call", expr.paren.line, expr.site);
+      return super.visitInvokeExpr(expr);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+// ProgramCache.java
+// Keeps the compiled form of scripts on disk to skip the front end next time.
+
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.TreeSet;
+
+class ProgramCache {
+  private static final String HEADER = "lox-cache";
+  // Bump when the encoding of programs changes
+  private static final int FORMAT = 2;
+  // Directory created next to scripts when no other one is given
+  static final String DIRECTORY = ".loxcache";
+
+  private ProgramCache() {
+  }
+
+  /**
+   * Get the compiled program of a script, from the cache if it holds one
+   * for this exact source, interpreter and options. Otherwise the script is
+   * compiled and, if it has no errors, saved for the next runs. Failing to
+   * read or write the cache only costs the time to compile.
+   * 
+   * @param script      script file
+   * @param charset     charset the script is encoded in
+   * @param directory   cache directory, or {@code null} for one next to the
+   *                    script
+   * @param interpreter interpreter that receives the resolved variables
+   * @return the program, or {@code null} if there were errors
+   * @throws IOException If the script can't be read
+   */
+  static CompactProgram compile(Path script, Charset charset, Path directory, Interpreter interpreter)
+      throws IOException {
+    byte[] source = Files.readAllBytes(script);
+    String key = key(source, charset);
+    Path file = file(script, directory);
+
+    CompactProgram program = load(file, key);
+    if (program != null)
+      return program;
+
+    List<Stmt> statements = Lox.compile(new String(source, charset), interpreter);
+    if (statements == null)
+      return null;
+    program = new CompactProgram(statements);
+    save(file, key, program);
+    return program;
+  }
+
+  /**
+   * Get the file caching a script. Its name comes from the script and the
+   * directory it is in, so scripts with the same name can share a cache
+   * directory.
+   * 
+   * @param script
+   * @param directory cache directory, or {@code null} for one next to the
+   *                  script
+   * @return {@code Path}
+   */
+  private static Path file(Path script, Path directory) {
+    Path absolute = script.toAbsolutePath().normalize();
+    if (directory == null)
+      directory = absolute.resolveSibling(DIRECTORY);
+    String location = hex(digest(absolute.getParent().toString().getBytes(StandardCharsets.UTF_8)));
+    return directory.resolve(absolute.getFileName() + "-" + location.substring(0, 8) + ".bin");
+  }
+
+  /**
+   * Read a cached program if it was saved under the same key.
+   * 
+   * @param file
+   * @param key
+   * @return the program, or {@code null} if there is none usable
+   */
+  private static CompactProgram load(Path file, String key) {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      DataInputStream data = new DataInputStream(in);
+      if (!data.readUTF().equals(HEADER + " " + key))
+        return null;
+      return CompactProgram.read(in);
+    } catch (NoSuchFileException error) {
+      // First run, compile it.
+      return null;
+    } catch (IOException error) {
+      // Corrupted or written by another build, compile it again.
+      return null;
+    }
+  }
+
+  /**
+   * Write a program to the cache. It is written to a temporary file first
+   * and then moved in place, so concurrent runs never read half a file.
+   * 
+   * @param file
+   * @param key
+   * @param program
+   */
+  private static void save(Path file, String key, CompactProgram program) {
+    Path temporary = null;
+    try {
+      Files.createDirectories(file.getParent());
+      temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF(HEADER + " " + key);
+        program.write(data);
+      }
+      try {
+        // Temporary files are only readable by their owner
+        Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-r--r--"));
+      } catch (UnsupportedOperationException error) {
+        // Not a POSIX file system, keep its default permissions.
+      }
+      try {
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException error) {
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException error) {
+      // A read-only location only means no caching.
+      try {
+        if (temporary != null)
+          Files.deleteIfExists(temporary);
+      } catch (IOException ignored) {
+        // Nothing else to do.
+      }
+    }
+  }
+
+  /**
+   * Hash everything the compiled program depends on: the source, its
+   * charset, the build of the interpreter and the options changing what
+   * the front end produces.
+   * 
+   * @param source  bytes of the script
+   * @param charset
+   * @return {@code String}
+   */
+  private static String key(byte[] source, Charset charset) {
+    StringBuilder options = new StringBuilder();
+    options.append(FORMAT).append(' ').append(build()).append(' ').append(charset.name());
+    options.append(Lox.optimize ? " optimize" : " no-optimize");
+    options.append(Lox.inline ? " inline" : " no-inline");
+    for (String pass : new TreeSet<>(Lox.disabledPasses))
+      options.append(" no-").append(pass);
+    options.append('\n');
+
+    MessageDigest digest = sha256();
+    digest.update(options.toString().getBytes(StandardCharsets.UTF_8));
+    digest.update(source);
+    return hex(digest.digest());
+  }
+
+  /**
+   * Identify the build of the interpreter by when its classes were last
+   * written, so a rebuilt interpreter never runs programs compiled by
+   * another one.
+   * 
+   * @return {@code long}
+   */
+  private static long build() {
+    URL classes = Lox.class.getResource("Lox.class");
+    try {
+      return classes == null ? 0 : classes.openConnection().getLastModified();
+    } catch (IOException error) {
+      return 0;
+    }
+  }
+
+  /**
+   * Hash some bytes.
+   * 
+   * @param bytes
+   * @return {@code byte[]}
+   */
+  private static byte[] digest(byte[] bytes) {
+    return sha256().digest(bytes);
+  }
+
+  /**
+   * Get a SHA-256 digest.
+   * 
+   * @return {@code MessageDigest}
+   */
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException error) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(error);
+    }
+  }
+
+  /**
+   * Format bytes in hexadecimal.
+   * 
+   * @param bytes
+   * @return {@code String}
+   */
+  private static String hex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+    for (byte b : bytes) {
+      builder.append(String.format("%02x", b));
+    }
+    return builder.toString();
+  }
+}
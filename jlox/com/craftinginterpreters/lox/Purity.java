@@ -0,0 +1,198 @@
+// Purity.java
+// Finds functions whose result only depends on their arguments.
+
+package com.craftinginterpreters.lox;
+
+class Purity extends AstRewriter {
+  // Sentinel class to unwind the analysis
+  private static class NotPure extends RuntimeException {
+    NotPure() {
+      super(null, null, false, false);
+    }
+  }
+
+  private final Stmt.Function function;
+  // Scopes opened inside the function body, its parameters are at 0
+  private int nesting = 0;
+
+  /**
+   * Initialize the analysis of a function.
+   * 
+   * @param function
+   */
+  private Purity(Stmt.Function function) {
+    this.function = function;
+  }
+
+  /**
+   * Check if a function is pure.
+   * A pure function only reads its parameters and its own locals, calls
+   * nothing but itself and has no side effects, so calling it again with the
+   * same arguments gives the same result. The result is cached in the
+   * declaration.
+   * 
+   * @param function
+   * @return {@code boolean}
+   */
+  static boolean isPure(Stmt.Function function) {
+    // Nothing is known about a body that is not parsed yet
+    if (function.lazy != null)
+      return false;
+    if (function.pure == null) {
+      try {
+        new Purity(function).rewrite(function.body);
+        function.pure = true;
+      } catch (NotPure error) {
+        function.pure = false;
+      }
+    }
+    return function.pure;
+  }
+
+  /**
+   * Check if a resolved variable is declared inside the function.
+   * 
+   * @param depth
+   * @return {@code boolean}
+   */
+  private boolean isLocal(int depth) {
+    return depth >= 0 && depth <= nesting;
+  }
+
+  /**
+   * Check if a resolved variable is the function itself, declared in the
+   * scope around it. A recursive function is pure as long as its name holds
+   * it, which is checked before each memoized call.
+   * 
+   * @param name
+   * @param depth
+   * @return {@code boolean}
+   */
+  private boolean isSelf(Token name, int depth) {
+    return (depth == -1 || depth == nesting + 1) && name.lexeme().equals(function.name.lexeme());
+  }
+
+  /**
+   * Fail unless a variable is declared inside the function.
+   * 
+   * @param depth
+   */
+  private void checkLocal(int depth) {
+    if (!isLocal(depth))
+      throw new NotPure();
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    nesting++;
+    super.visitBlockStmt(stmt);
+    nesting--;
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitForStmt(Stmt.For stmt) {
+    if (stmt.initializer != null)
+      nesting++;
+    super.visitForStmt(stmt);
+    if (stmt.initializer != null)
+      nesting--;
+    return stmt;
+  }
+
+  // Closures and classes could escape and be called with other state.
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    checkLocal(expr.depth);
+    return super.visitAssignExpr(expr);
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    if (!(expr.callee instanceof Expr.Variable))
+      throw new NotPure();
+    Expr.Variable callee = (Expr.Variable) expr.callee;
+    if (!isSelf(callee.name, callee.depth))
+      throw new NotPure();
+    rewriteAll(expr.arguments);
+    return expr;
+  }
+
+  @Override
+  public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+    checkLocal(expr.depth);
+    return expr;
+  }
+
+  @Override
+  public Expr visitHoistedExpr(Expr.Hoisted expr) {
+    rewrite(expr.expression);
+    return expr;
+  }
+
+  @Override
+  public Expr visitIncrementExpr(Expr.Increment expr) {
+    checkLocal(expr.depth);
+    return expr;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    if (!isLocal(expr.depth) && !isSelf(expr.name, expr.depth))
+      throw new NotPure();
+    return expr;
+  }
+
+  // Fields and other functions are state outside the arguments.
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitInvokeExpr(Expr.Invoke expr) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitSuperExpr(Expr.Super expr) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    throw new NotPure();
+  }
+
+  @Override
+  public Expr visitThisGetExpr(Expr.ThisGet expr) {
+    throw new NotPure();
+  }
+}
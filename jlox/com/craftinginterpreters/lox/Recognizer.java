@@ -0,0 +1,495 @@
+// Recognizer.java
+// Checks a deferred function body without building its tree.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+class Recognizer {
+  // Shapes of expressions, enough to check assignment targets
+  private static final int OTHER = 0;
+  private static final int VARIABLE = 1;
+  private static final int GET = 2;
+
+  private enum FunctionType {
+    FUNCTION,
+    INITIALIZER,
+    METHOD
+  }
+
+  private enum ClassType {
+    NONE,
+    CLASS,
+    SUBCLASS
+  }
+
+  // Reads the tokens and reports the syntax errors
+  private final Parser parser;
+  // Resolution errors, reported when the function is resolved
+  private final List<Diagnostic> errors = new ArrayList<>();
+  // The Boolean shows whether the variable is defined and can be used
+  private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+  private FunctionType currentFunction;
+  private ClassType currentClass;
+
+  /**
+   * Initialize the recognizer of a function body.
+   * 
+   * @param parser
+   * @param isMethod      whether the function is a method
+   * @param hasSuperclass whether the method's class has a superclass
+   */
+  private Recognizer(Parser parser, boolean isMethod, boolean hasSuperclass) {
+    this.parser = parser;
+    this.currentClass = !isMethod ? ClassType.NONE : hasSuperclass ? ClassType.SUBCLASS : ClassType.CLASS;
+  }
+
+  /**
+   * Check the body of a top level function or method, up to its closing
+   * brace. Syntax errors are reported as the parser reports them, with the
+   * same recovery. The checks of the resolver are made as well, but their
+   * errors are returned so they are reported when the function is resolved,
+   * in the same order as if the body had been parsed.
+   * 
+   * @param parser        parser right after the opening brace of the body
+   * @param name          name of the function
+   * @param params        parameters of the function
+   * @param isMethod      whether the function is a method
+   * @param hasSuperclass whether the method's class has a superclass
+   * @return resolution errors of the body
+   */
+  static List<Diagnostic> checkBody(Parser parser, Token name, List<Token> params, boolean isMethod,
+      boolean hasSuperclass) {
+    Recognizer recognizer = new Recognizer(parser, isMethod, hasSuperclass);
+    if (!isMethod) {
+      recognizer.currentFunction = FunctionType.FUNCTION;
+    } else if (name.lexeme().equals("init")) {
+      recognizer.currentFunction = FunctionType.INITIALIZER;
+    } else {
+      recognizer.currentFunction = FunctionType.METHOD;
+    }
+
+    // The resolver checks the parameters themselves
+    recognizer.beginScope();
+    for (Token param : params)
+      recognizer.scopes.peek().put(param.lexeme(), true);
+    recognizer.body();
+    return recognizer.errors;
+  }
+
+  /**
+   * Check the declarations of a function body and its closing brace.
+   */
+  private void body() {
+    while (!parser.check(RIGHT_BRACE) && !parser.isAtEnd()) {
+      declaration();
+    }
+
+    parser.consume(RIGHT_BRACE, "Expect '}' after block.");
+  }
+
+  /**
+   * Check the declaration grammar rule.
+   */
+  private void declaration() {
+    try {
+      if (parser.match(CLASS)) {
+        classDeclaration();
+      } else if (parser.match(FUN)) {
+        function("function", FunctionType.FUNCTION);
+      } else if (parser.match(VAR)) {
+        varDeclaration();
+      } else {
+        statement();
+      }
+    } catch (Parser.ParseError error) {
+      parser.synchronize();
+    }
+  }
+
+  /**
+   * Check the classDecl grammar rule.
+   */
+  private void classDeclaration() {
+    Token name = parser.consume(IDENTIFIER, "Expect class name.");
+    declare(name);
+    define(name);
+
+    ClassType enclosingClass = currentClass;
+    currentClass = ClassType.CLASS;
+    if (parser.match(LESS)) {
+      Token superclass = parser.consume(IDENTIFIER, "Expect superclass name.");
+      if (name.lexeme().equals(superclass.lexeme()))
+        error(superclass, "A class can't inherit from itself.");
+      currentClass = ClassType.SUBCLASS;
+      variable(superclass);
+    }
+
+    parser.consume(LEFT_BRACE, "Expect '{' before class body.");
+    while (!parser.check(RIGHT_BRACE) && !parser.isAtEnd()) {
+      function("method", FunctionType.METHOD);
+    }
+    parser.consume(RIGHT_BRACE, "Expect '}' after class body.");
+
+    currentClass = enclosingClass;
+  }
+
+  /**
+   * Check the statement grammar rule.
+   */
+  private void statement() {
+    if (parser.match(FOR)) {
+      forStatement();
+    } else if (parser.match(IF)) {
+      parser.consume(LEFT_PAREN, "Expect '(' after 'if'.");
+      expression();
+      parser.consume(RIGHT_PAREN, "Expect ')' after if condition.");
+      statement();
+      if (parser.match(ELSE))
+        statement();
+    } else if (parser.match(PRINT)) {
+      expression();
+      parser.consume(SEMICOLON, "Expect ';' after value.");
+    } else if (parser.match(RETURN)) {
+      returnStatement();
+    } else if (parser.match(WHILE)) {
+      parser.consume(LEFT_PAREN, "Expect '(' after 'while'.");
+      expression();
+      parser.consume(RIGHT_PAREN, "Expect ')' after condition.");
+      statement();
+    } else if (parser.match(LEFT_BRACE)) {
+      beginScope();
+      body();
+      endScope();
+    } else {
+      expression();
+      parser.consume(SEMICOLON, "Expect ';' after expression.");
+    }
+  }
+
+  /**
+   * Check the forStmt grammar rule.
+   * The resolver checks the increment after the body, so are its errors.
+   */
+  private void forStatement() {
+    parser.consume(LEFT_PAREN, "Expect '(' after 'for'.");
+
+    boolean hasInitializer = !parser.match(SEMICOLON);
+    if (hasInitializer) {
+      beginScope();
+      if (parser.match(VAR)) {
+        varDeclaration();
+      } else {
+        expression();
+        parser.consume(SEMICOLON, "Expect ';' after expression.");
+      }
+    }
+
+    if (!parser.check(SEMICOLON))
+      expression();
+    parser.consume(SEMICOLON, "Expect ';' after loop condition.");
+
+    List<Diagnostic> increment = new ArrayList<>();
+    if (!parser.check(RIGHT_PAREN)) {
+      int mark = errors.size();
+      expression();
+      increment.addAll(take(mark));
+    }
+    parser.consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+    statement();
+    errors.addAll(increment);
+
+    if (hasInitializer)
+      endScope();
+  }
+
+  /**
+   * Check the returnStmt grammar rule.
+   */
+  private void returnStatement() {
+    Token keyword = parser.previous();
+    if (!parser.check(SEMICOLON)) {
+      if (currentFunction == FunctionType.INITIALIZER)
+        error(keyword, "Can't return a value from an initializer.");
+      expression();
+    }
+
+    parser.consume(SEMICOLON, "Expect ';' after return value.");
+  }
+
+  /**
+   * Check the varDecl grammar rule.
+   */
+  private void varDeclaration() {
+    Token name = parser.consume(IDENTIFIER, "Expect variable name.");
+    declare(name);
+
+    if (parser.match(EQUAL))
+      expression();
+
+    parser.consume(SEMICOLON, "Exprect ';' after variable declaration.");
+    define(name);
+  }
+
+  /**
+   * Check the function grammar rule of a nested function or a method.
+   * 
+   * @param kind
+   * @param type
+   */
+  private void function(String kind, FunctionType type) {
+    Token name = parser.consume(IDENTIFIER, "Expect " + kind + " name.");
+    if (type == FunctionType.FUNCTION) {
+      declare(name);
+      define(name);
+    } else if (name.lexeme().equals("init")) {
+      type = FunctionType.INITIALIZER;
+    }
+
+    FunctionType enclosingFunction = currentFunction;
+    currentFunction = type;
+    beginScope();
+
+    parser.consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+    if (!parser.check(RIGHT_PAREN)) {
+      int count = 0;
+      do {
+        if (count++ >= 255) {
+          parser.error(parser.peek(), "Can't have more than 255 parameters.");
+        }
+
+        Token param = parser.consume(IDENTIFIER, "Expect parameter name.");
+        declare(param);
+        define(param);
+      } while (parser.match(COMMA));
+    }
+    parser.consume(RIGHT_PAREN, "Expect ')' after parameters.");
+
+    parser.consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+    body();
+
+    endScope();
+    currentFunction = enclosingFunction;
+  }
+
+  /**
+   * Check the expression grammar rule.
+   * 
+   * @return shape of the expression
+   */
+  private int expression() {
+    return assignment();
+  }
+
+  /**
+   * Check the assignment grammar rule.
+   * The resolver checks the value before the target, so are its errors.
+   * 
+   * @return shape of the expression
+   */
+  private int assignment() {
+    int mark = errors.size();
+    int shape = parsePrecedence(Parser.PREC_OR);
+
+    if (parser.match(EQUAL)) {
+      Token equals = parser.previous();
+      List<Diagnostic> target = take(mark);
+      assignment();
+
+      if (shape == GET) {
+        errors.addAll(target);
+      } else if (shape != VARIABLE) {
+        parser.error(equals, "Invalid assignment target.");
+      }
+      // An assigned variable isn't read, so it isn't checked
+      return OTHER;
+    }
+
+    return shape;
+  }
+
+  /**
+   * Check an expression whose operators bind at least as tightly as the
+   * given precedence, like {@code Parser.parsePrecedence()}.
+   * 
+   * @param precedence lowest precedence of the operators to check
+   * @return shape of the expression
+   */
+  private int parsePrecedence(int precedence) {
+    int shape = unary();
+
+    for (;;) {
+      Token operator = parser.peek();
+      int infix = Parser.infixPrecedence[operator.type.ordinal()];
+      if (infix < precedence)
+        return shape;
+      parser.advance();
+
+      switch (operator.type) {
+        case LEFT_PAREN:
+          finishCall();
+          shape = OTHER;
+          break;
+        case DOT:
+          parser.consume(IDENTIFIER, "Expect property name after '.'.");
+          shape = GET;
+          break;
+        default:
+          parsePrecedence(infix + 1);
+          shape = OTHER;
+          break;
+      }
+    }
+  }
+
+  /**
+   * Check the unary grammar rule.
+   * 
+   * @return shape of the expression
+   */
+  private int unary() {
+    TokenType type = parser.peek().type;
+    if (type == BANG || type == MINUS) {
+      parser.advance();
+      parsePrecedence(Parser.PREC_UNARY);
+      return OTHER;
+    }
+
+    return primary();
+  }
+
+  /**
+   * Check the arguments grammar rule.
+   */
+  private void finishCall() {
+    if (!parser.check(RIGHT_PAREN)) {
+      int count = 0;
+      do {
+        if (count++ >= 255) {
+          parser.error(parser.peek(), "Can't have more than 255 arguments.");
+        }
+        expression();
+      } while (parser.match(COMMA));
+    }
+
+    parser.consume(RIGHT_PAREN, "Expect ')' after arguments.");
+  }
+
+  /**
+   * Check the primary grammar rule.
+   * 
+   * @return shape of the expression
+   */
+  private int primary() {
+    Token token = parser.peek();
+    switch (token.type) {
+      case FALSE:
+      case TRUE:
+      case NIL:
+      case NUMBER:
+      case STRING:
+        parser.advance();
+        return OTHER;
+      case SUPER:
+        parser.advance();
+        parser.consume(DOT, "Expect '.' after 'super'.");
+        parser.consume(IDENTIFIER, "Expect superclass method name.");
+        if (currentClass == ClassType.NONE) {
+          error(token, "Can't use 'super' outside of a class.");
+        } else if (currentClass != ClassType.SUBCLASS) {
+          error(token, "Can't use 'super' in a class with no superclass.");
+        }
+        return OTHER;
+      case THIS:
+        parser.advance();
+        if (currentClass == ClassType.NONE)
+          error(token, "Can't use 'this' outside of a class.");
+        return OTHER;
+      case IDENTIFIER:
+        parser.advance();
+        variable(token);
+        return VARIABLE;
+      case LEFT_PAREN:
+        parser.advance();
+        expression();
+        parser.consume(RIGHT_PAREN, "Expect ')' after expression.");
+        return OTHER;
+      default:
+        throw parser.error(token, "Expect expression.");
+    }
+  }
+
+  /**
+   * Check a variable that is read.
+   * 
+   * @param name
+   */
+  private void variable(Token name) {
+    if (scopes.peek().get(name.lexeme()) == Boolean.FALSE)
+      error(name, "Can't read local variable in its own initializer.");
+  }
+
+  /**
+   * Begin a new scope.
+   */
+  private void beginScope() {
+    scopes.push(new HashMap<String, Boolean>());
+  }
+
+  /**
+   * End the innermost scope.
+   */
+  private void endScope() {
+    scopes.pop();
+  }
+
+  /**
+   * Declare a variable in the innermost scope, not usable yet.
+   * 
+   * @param name
+   */
+  private void declare(Token name) {
+    Map<String, Boolean> scope = scopes.peek();
+    if (scope.containsKey(name.lexeme()))
+      error(name, "Already a variable with this name in this scope.");
+    scope.put(name.lexeme(), false);
+  }
+
+  /**
+   * Make a declared variable usable.
+   * 
+   * @param name
+   */
+  private void define(Token name) {
+    scopes.peek().put(name.lexeme(), true);
+  }
+
+  /**
+   * Keep a resolution error to report later.
+   * 
+   * @param token
+   * @param message
+   */
+  private void error(Token token, String message) {
+    errors.add(Diagnostic.at(token, message));
+  }
+
+  /**
+   * Take out the resolution errors found since a mark, to put them back in
+   * the order the resolver finds them.
+   * 
+   * @param mark count of errors before
+   * @return {@code List<Diagnostic>}
+   */
+  private List<Diagnostic> take(int mark) {
+    List<Diagnostic> taken = new ArrayList<>(errors.subList(mark, errors.size()));
+    errors.subList(mark, errors.size()).clear();
+    return taken;
+  }
+}
@@ -49,6 +49,36 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
   }
 
+  /**
+   * Resolve the body of a function that was parsed lazily.
+   * Only top level functions and methods of top level classes are parsed
+   * lazily, so the only scopes around them are "this" and "super".
+   * 
+   * @param function
+   * @param isMethod      whether the function is a method
+   * @param hasSuperclass whether the method's class has a superclass
+   */
+  void resolveLazy(Stmt.Function function, boolean isMethod, boolean hasSuperclass) {
+    if (!isMethod) {
+      resolveFunction(function, FunctionType.FUNCTION);
+      return;
+    }
+
+    currentClass = hasSuperclass ? ClassType.SUBCLASS : ClassType.CLASS;
+    if (hasSuperclass) {
+      beginScope();
+      scopes.peek().put("super", true);
+    }
+    beginScope();
+    scopes.peek().put("this", true);
+
+    if (function.name.lexeme().equals("init")) {
+      resolveFunction(function, FunctionType.INITIALIZER);
+    } else {
+      resolveFunction(function, FunctionType.METHOD);
+    }
+  }
+
   /**
    * Resolve the function body.
    * 
@@ -64,6 +94,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       declare(param);
       define(param);
     }
+    if (function.lazy != null) {
+      // A deferred body was checked when it was skipped
+      for (Diagnostic error : function.lazy.errors)
+        Lox.error(error);
+    }
     resolve(function.body);
     endScope();
     currentFunction = enclosingFunction;
@@ -92,11 +127,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     if (scopes.isEmpty())
       return;
     Map<String, Boolean> scope = scopes.peek();
-    if (scope.containsKey(name.lexeme)) {
+    if (scope.containsKey(name.lexeme())) {
       Lox.error(name, "Already a variable with this name in this scope.");
     }
 
-    scope.put(name.lexeme, false);
+    scope.put(name.lexeme(), false);
   }
 
   /**
@@ -107,7 +142,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   private void define(Token name) {
     if (scopes.isEmpty())
       return;
-    scopes.peek().put(name.lexeme, true);
+    scopes.peek().put(name.lexeme(), true);
   }
 
   /**
@@ -120,7 +155,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
    */
   private void resolveLocal(Expr expr, Token name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
-      if (scopes.get(i).containsKey(name.lexeme)) {
+      if (scopes.get(i).containsKey(name.lexeme())) {
         interpreter.resolve(expr, scopes.size() - 1 - i);
         return;
       }
@@ -143,7 +178,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     declare(stmt.name);
     define(stmt.name);
 
-    if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+    if (stmt.superclass != null && stmt.name.lexeme().equals(stmt.superclass.name.lexeme())) {
       Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
     }
 
@@ -163,7 +198,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     for (Stmt.Function method : stmt.methods) {
       FunctionType declaration = FunctionType.METHOD;
-      if (method.name.lexeme.equals("init")) {
+      if (method.name.lexeme().equals("init")) {
         declaration = FunctionType.INITIALIZER;
       }
 
@@ -186,6 +221,26 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    // The initializer gets its own scope, shared by every iteration
+    if (stmt.initializer != null) {
+      beginScope();
+      resolve(stmt.initializer);
+    }
+    if (stmt.condition != null) {
+      resolve(stmt.condition);
+    }
+    resolve(stmt.body);
+    if (stmt.increment != null) {
+      resolve(stmt.increment);
+    }
+    if (stmt.initializer != null) {
+      endScope();
+    }
+    return null;
+  }
+
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
     declare(stmt.name);
@@ -270,6 +325,42 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+    // Fused nodes are only created after resolution
+    return null;
+  }
+
+  @Override
+  public Void visitHoistedExpr(Expr.Hoisted expr) {
+    // Hoisted expressions are only created after resolution
+    return null;
+  }
+
+  @Override
+  public Void visitIncrementExpr(Expr.Increment expr) {
+    // Fused nodes are only created after resolution
+    return null;
+  }
+
+  @Override
+  public Void visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    // Inlined bodies are only created at runtime
+    return null;
+  }
+
+  @Override
+  public Void visitInvokeExpr(Expr.Invoke expr) {
+    // Fused nodes are only created after resolution
+    return null;
+  }
+
+  @Override
+  public Void visitThisGetExpr(Expr.ThisGet expr) {
+    // Fused nodes are only created after resolution
+    return null;
+  }
+
   @Override
   public Void visitGetExpr(Expr.Get expr) {
     resolve(expr.object);
@@ -332,7 +423,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitVariableExpr(Expr.Variable expr) {
-    if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+    if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme()) == Boolean.FALSE) {
       Lox.error(expr.name, "Can't read local variable in its own initializer.");
     }
 
@@ -0,0 +1,131 @@
+// Rope.java
+// Lox string built by concatenation, flattened only when its text is needed.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+final class Rope implements CharSequence {
+  // Shorter results are copied right away, a node isn't worth it
+  private static final int MIN_LENGTH = 64;
+
+  // Parts of the rope, each a String or a Rope, until it is flattened
+  private Object left;
+  private Object right;
+  private String flat = null;
+  private final int length;
+
+  /**
+   * Initialize a rope joining two strings.
+   * 
+   * @param left
+   * @param right
+   * @param length total length of both parts
+   */
+  private Rope(Object left, Object right, int length) {
+    this.left = left;
+    this.right = right;
+    this.length = length;
+  }
+
+  /**
+   * Check if a value is a Lox string.
+   * 
+   * @param object
+   * @return {@code boolean}
+   */
+  static boolean isString(Object object) {
+    return object instanceof String || object instanceof Rope;
+  }
+
+  /**
+   * Concatenate two Lox strings without copying their characters.
+   * 
+   * @param left  a String or a Rope
+   * @param right a String or a Rope
+   * @return a String or a Rope
+   */
+  static Object concat(Object left, Object right) {
+    left = unwrap(left);
+    right = unwrap(right);
+    int length = ((CharSequence) left).length() + ((CharSequence) right).length();
+    if (length < MIN_LENGTH)
+      return Interner.intern(left.toString() + right.toString());
+    return new Rope(left, right, length);
+  }
+
+  /**
+   * Use the text of a rope that is already flattened instead of the rope.
+   * 
+   * @param object
+   * @return
+   */
+  private static Object unwrap(Object object) {
+    if (object instanceof Rope && ((Rope) object).flat != null)
+      return ((Rope) object).flat;
+    return object;
+  }
+
+  /**
+   * Flatten the rope and drop its parts.
+   * Ropes built in a loop are as deep as the number of iterations, so the
+   * parts are walked with an explicit stack.
+   */
+  @Override
+  public String toString() {
+    if (flat != null)
+      return flat;
+
+    StringBuilder builder = new StringBuilder(length);
+    Deque<Object> parts = new ArrayDeque<>();
+    parts.push(this);
+    while (!parts.isEmpty()) {
+      Object part = unwrap(parts.pop());
+      if (part instanceof String) {
+        builder.append((String) part);
+      } else {
+        Rope rope = (Rope) part;
+        parts.push(rope.right);
+        parts.push(rope.left);
+      }
+    }
+
+    flat = Interner.intern(builder.toString());
+    left = null;
+    right = null;
+    return flat;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  /**
+   * Compare the text with a String or another Rope.
+   */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (!isString(object) || ((CharSequence) object).length() != length)
+      return false;
+    return toString().equals(object.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+}
@@ -3,19 +3,60 @@
 
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayList;
+import java.util.List;
+
 class RuntimeError extends RuntimeException {
   final Token token;
+  // Functions the error unwound through, innermost first, and the line
+  // each one was called from. Filled in by the interpreter's call sites.
+  private List<String> functions = null;
+  private List<Integer> lines = null;
 
   /**
    * Creates a RuntimeError which tracks the token and prints a message for the
-   * user
+   * user.
+   * The Java stack trace is not captured, only the Lox calls are recorded.
    * 
    * @param token
    * @param message
    */
   RuntimeError(Token token, String message) {
-    super(message);
+    super(message, null, false, false);
     this.token = token;
   }
 
+  /**
+   * Record a call the error unwound through.
+   * 
+   * @param function name of the function that was called
+   * @param line     line of the call
+   */
+  void addFrame(String function, int line) {
+    if (functions == null) {
+      functions = new ArrayList<>();
+      lines = new ArrayList<>();
+    }
+    functions.add(function);
+    lines.add(line);
+  }
+
+  /**
+   * Format the Lox stack trace, one line per call.
+   * 
+   * @return the trace, or an empty string for errors outside functions
+   */
+  String trace() {
+    if (functions == null)
+      return "";
+
+    StringBuilder builder = new StringBuilder();
+    int line = token.line;
+    for (int i = 0; i < functions.size(); i++) {
+      builder.append("\n    at ").append(functions.get(i)).append(" (line ").append(line).append(")");
+      line = lines.get(i);
+    }
+    builder.append("\n    at script (line ").append(line).append(")");
+    return builder.toString();
+  }
 }
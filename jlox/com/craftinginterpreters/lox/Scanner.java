@@ -10,16 +10,21 @@ import java.util.Map;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
-class Scanner {
+class Scanner implements TokenSource {
   private final String source;
   private final List<Token> tokens = new ArrayList<>();
+  // End of the part of the source being scanned
+  private final int end;
   // Init Scanner state
   private int start = 0;
   private int current = 0;
   private int line = 1;
+  // Identifiers seen so far, each name is copied out of the source only once
+  private String[] names = new String[64];
+  private int nameCount = 0;
 
   // Creat and define a map of all reserved words
-  private static final Map<String, TokenType> keywords;
+  static final Map<String, TokenType> keywords;
   static {
     keywords = new HashMap<>();
     keywords.put("and", AND);
@@ -40,13 +45,81 @@ class Scanner {
     keywords.put("while", WHILE);
   }
 
+  // Text of the tokens always spelled the same way, indexed by token type
+  static final String[] spellings = new String[TokenType.values().length];
+  static {
+    String[][] punctuation = {
+        { "(", "LEFT_PAREN" }, { ")", "RIGHT_PAREN" }, { "{", "LEFT_BRACE" },
+        { "}", "RIGHT_BRACE" }, { ",", "COMMA" }, { ".", "DOT" }, { "-", "MINUS" },
+        { "+", "PLUS" }, { ";", "SEMICOLON" }, { "/", "SLASH" }, { "*", "STAR" },
+        { "!", "BANG" }, { "!=", "BANG_EQUAL" }, { "=", "EQUAL" },
+        { "==", "EQUAL_EQUAL" }, { ">", "GREATER" }, { ">=", "GREATER_EQUAL" },
+        { "<", "LESS" }, { "<=", "LESS_EQUAL" } };
+    for (String[] entry : punctuation)
+      spellings[TokenType.valueOf(entry[1]).ordinal()] = entry[0];
+    for (Map.Entry<String, TokenType> keyword : keywords.entrySet())
+      spellings[keyword.getValue().ordinal()] = keyword.getKey();
+  }
+
+  // Classes of the ASCII characters, looked up instead of comparing ranges
+  static final byte ALPHA = 1;
+  static final byte DIGIT = 2;
+  static final byte[] classes = new byte[128];
+  static {
+    for (char c = 'a'; c <= 'z'; c++)
+      classes[c] = ALPHA;
+    for (char c = 'A'; c <= 'Z'; c++)
+      classes[c] = ALPHA;
+    classes['_'] = ALPHA;
+    for (char c = '0'; c <= '9'; c++)
+      classes[c] = DIGIT;
+  }
+
+  // Keywords by a perfect hash of their first two characters and length
+  private static final TokenType[] keywordTable = new TokenType[32];
+  static {
+    for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+      String text = keyword.getKey();
+      int hash = keywordHash(text.charAt(0), text.length() > 1 ? text.charAt(1) : '\0', text.length());
+      if (keywordTable[hash] != null)
+        throw new AssertionError("Keyword hash collision: " + text);
+      keywordTable[hash] = keyword.getValue();
+    }
+  }
+
+  // Integers up to this many digits are exact doubles
+  static final int EXACT_DIGITS = 15;
+  // Powers of ten that are exact doubles
+  static final double[] powersOfTen = new double[23];
+  static {
+    powersOfTen[0] = 1;
+    for (int i = 1; i < powersOfTen.length; i++)
+      powersOfTen[i] = powersOfTen[i - 1] * 10;
+  }
+
   /**
    * Initializes the Scanner with the source code.
    * 
    * @param source The raw source code string
    */
   Scanner(String source) {
+    this(source, 0, source.length(), 1);
+  }
+
+  /**
+   * Initializes the Scanner with part of the source code.
+   * Tokens keep their position in the whole source.
+   * 
+   * @param source The raw source code string
+   * @param from   start of the part to scan
+   * @param to     end of the part to scan
+   * @param line   line the part starts on
+   */
+  Scanner(String source, int from, int to, int line) {
     this.source = source;
+    this.current = from;
+    this.end = to;
+    this.line = line;
   }
 
   /**
@@ -67,6 +140,22 @@ class Scanner {
     return tokens;
   }
 
+  /**
+   * Scan tokens on demand instead of all at once.
+   * A scanner is used either this way or through {@code scanTokens()}.
+   */
+  @Override
+  public Token nextToken() {
+    while (tokens.isEmpty() && !isAtEnd()) {
+      start = current;
+      scanToken();
+    }
+
+    if (tokens.isEmpty())
+      return new Token(EOF, "", null, line);
+    return tokens.remove(0);
+  }
+
   /**
    * Scan and produce one token
    */
@@ -164,16 +253,16 @@ class Scanner {
    */
   private void blockComment() {
     while (!isAtEnd() && (peek() != '*' || peekNext() != '/')) {
+      if (match('/')) {
+        // Nesting
+        if (match('*'))
+          blockComment();
+        // What follows a lone "/" or a nested comment is checked again
+        continue;
+      }
       // Multi-line
       if (peek() == '\n')
         line++;
-      else if (match('/') && match('*')) {
-        // Nesting
-        blockComment();
-        if (isAtEnd()) {
-          break;
-        }
-      }
       advance();
     }
     if (isAtEnd()) {
@@ -189,34 +278,143 @@ class Scanner {
    * Scan and produce an identifier.
    */
   private void identifier() {
-    while (isAlphaNumeric(peek()))
-      advance();
+    int index = current;
+    while (index < end && isAlphaNumeric(source.charAt(index)))
+      index++;
+    current = index;
 
-    String text = source.substring(start, current);
     // Check if the identifier is a reserved keyword or not
-    TokenType type = keywords.get(text);
-    if (type == null)
-      type = IDENTIFIER;
-    addToken(type);
+    int length = current - start;
+    TokenType type = keyword(source.charAt(start), length > 1 ? source.charAt(start + 1) : '\0', length);
+    if (type != null) {
+      String spelling = spellings[type.ordinal()];
+      if (spelling.length() == length && source.regionMatches(start, spelling, 0, length)) {
+        tokens.add(new Token(type, spelling, start, null, line));
+        return;
+      }
+    }
+    tokens.add(new Token(IDENTIFIER, name(start, current), start, null, line));
+  }
+
+  /**
+   * Hash the start and the length of a keyword.
+   * The factors were picked so the 16 keywords don't collide.
+   * 
+   * @param first  first character
+   * @param second second character, or 0 for a one character identifier
+   * @param length
+   * @return slot in the keyword table
+   */
+  private static int keywordHash(char first, char second, int length) {
+    return (first + second * 18 + length * 7) & 31;
+  }
+
+  /**
+   * Find the only keyword an identifier can be.
+   * The caller still has to compare the identifier with its spelling.
+   * 
+   * @param first  first character
+   * @param second second character, or 0 for a one character identifier
+   * @param length
+   * @return the candidate keyword, or {@code null} if it can't be one
+   */
+  static TokenType keyword(char first, char second, int length) {
+    return keywordTable[keywordHash(first, second, length)];
+  }
+
+  /**
+   * Get the text of an identifier, shared by every occurrence of the name.
+   * The names are kept in an open addressing table hashed the way
+   * {@code String.hashCode()} is, so a name seen before is found without
+   * copying it out of the source.
+   * 
+   * @param from start of the identifier
+   * @param to   end of the identifier
+   * @return {@code String}
+   */
+  private String name(int from, int to) {
+    int length = to - from;
+    int hash = 0;
+    for (int i = from; i < to; i++)
+      hash = 31 * hash + source.charAt(i);
+
+    int mask = names.length - 1;
+    int slot = hash & mask;
+    for (String name = names[slot]; name != null; name = names[slot]) {
+      if (name.length() == length && source.regionMatches(from, name, 0, length))
+        return name;
+      slot = (slot + 1) & mask;
+    }
+
+    String name = source.substring(from, to);
+    names[slot] = name;
+    if (++nameCount * 2 > names.length)
+      growNames();
+    return name;
+  }
+
+  /**
+   * Double the size of the identifier table.
+   */
+  private void growNames() {
+    String[] old = names;
+    names = new String[old.length * 2];
+    int mask = names.length - 1;
+    for (String name : old) {
+      if (name == null)
+        continue;
+      int slot = name.hashCode() & mask;
+      while (names[slot] != null)
+        slot = (slot + 1) & mask;
+      names[slot] = name;
+    }
   }
 
   /**
    * Scan and produce a number literal
    */
   private void number() {
-    while (isDigit(peek()))
-      advance();
+    // The digits are accumulated while they are scanned
+    long mantissa = source.charAt(start) - '0';
+    int digits = 1;
+    while (isDigit(peek())) {
+      mantissa = mantissa * 10 + (advance() - '0');
+      digits++;
+    }
 
     // Look for a fractional part.
+    int fraction = 0;
     if (peek() == '.' && isDigit(peekNext())) {
       // Consume the "."
       advance();
 
-      while (isDigit(peek()))
-        advance();
+      while (isDigit(peek())) {
+        mantissa = mantissa * 10 + (advance() - '0');
+        digits++;
+        fraction++;
+      }
     }
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(NUMBER, toDouble(mantissa, digits, fraction, start, current));
+  }
+
+  /**
+   * Get the value of a number literal from its digits.
+   * When both the digits and the power of ten are exact doubles, the division
+   * rounds the same way {@code Double.parseDouble} does. Longer literals are
+   * parsed from their text.
+   * 
+   * @param mantissa the digits as an integer
+   * @param digits   count of digits
+   * @param fraction count of digits after the "."
+   * @param from     start of the literal
+   * @param to       end of the literal
+   * @return {@code double}
+   */
+  private double toDouble(long mantissa, int digits, int fraction, int from, int to) {
+    if (digits <= EXACT_DIGITS)
+      return mantissa / powersOfTen[fraction];
+    return Double.parseDouble(source.substring(from, to));
   }
 
   /**
@@ -241,7 +439,7 @@ class Scanner {
     advance();
 
     // Trim the surrounding quotes.
-    String value = source.substring(start + 1, current - 1);
+    String value = Interner.intern(source.substring(start + 1, current - 1));
     addToken(STRING, value);
   }
 
@@ -277,7 +475,7 @@ class Scanner {
    * @return next character
    */
   private char peekNext() {
-    if (current + 1 >= source.length())
+    if (current + 1 >= end)
       return '\0';
     return source.charAt(current + 1);
   }
@@ -289,7 +487,7 @@ class Scanner {
    * @return {@code boolean}
    */
   private boolean isAlpha(char c) {
-    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    return c < 128 && classes[c] == ALPHA;
   }
 
   /**
@@ -299,7 +497,7 @@ class Scanner {
    * @return {@code boolean}
    */
   private boolean isAlphaNumeric(char c) {
-    return isAlpha(c) || isDigit(c);
+    return c < 128 && classes[c] != 0;
   }
 
   /**
@@ -309,7 +507,7 @@ class Scanner {
    * @return {@code boolean}
    */
   private boolean isDigit(char c) {
-    return c >= '0' && c <= '9';
+    return c < 128 && classes[c] == DIGIT;
   }
 
   /**
@@ -318,7 +516,7 @@ class Scanner {
    * @return {@code boolean}
    */
   private boolean isAtEnd() {
-    return current >= source.length();
+    return current >= end;
   }
 
   /**
@@ -340,14 +538,20 @@ class Scanner {
   }
 
   /**
-   * Grab the text of the current lexeme and output it.
+   * Output a token spanning the current lexeme.
+   * Tokens always spelled the same way share their text, the others only
+   * copy it out of the source when it is asked for.
    * 
    * @param type
    * @param literal
    */
   private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
+    String spelling = spellings[type.ordinal()];
+    if (spelling != null) {
+      tokens.add(new Token(type, spelling, start, literal, line));
+    } else {
+      tokens.add(new Token(type, source, start, current - start, literal, line));
+    }
   }
 
 }
@@ -3,10 +3,28 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 
 abstract class Stmt {
+  static final int BLOCK = 0;
+  static final int CLASS = 1;
+  static final int EXPRESSION = 2;
+  static final int FOR = 3;
+  static final int FUNCTION = 4;
+  static final int IF = 5;
+  static final int PRINT = 6;
+  static final int RETURN = 7;
+  static final int VAR = 8;
+  static final int WHILE = 9;
+
+  final int kind;
+
+  Stmt(int kind) {
+    this.kind = kind;
+  }
+
   interface Visitor<R> {
     R visitBlockStmt(Block stmt);
     R visitClassStmt(Class stmt);
     R visitExpressionStmt(Expression stmt);
+    R visitForStmt(For stmt);
     R visitFunctionStmt(Function stmt);
     R visitIfStmt(If stmt);
     R visitPrintStmt(Print stmt);
@@ -16,6 +34,7 @@ abstract class Stmt {
   }
   static class Block extends Stmt {
     Block(List<Stmt> statements) {
+      super(BLOCK);
       this.statements = statements;
     }
 
@@ -24,10 +43,16 @@ abstract class Stmt {
       return visitor.visitBlockStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitBlockStmt(this);
+    }
+
     final List<Stmt> statements;
   }
   static class Class extends Stmt {
     Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+      super(CLASS);
       this.name = name;
       this.superclass = superclass;
       this.methods = methods;
@@ -38,12 +63,18 @@ abstract class Stmt {
       return visitor.visitClassStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitClassStmt(this);
+    }
+
     final Token name;
     final Expr.Variable superclass;
     final List<Stmt.Function> methods;
   }
   static class Expression extends Stmt {
     Expression(Expr expression) {
+      super(EXPRESSION);
       this.expression = expression;
     }
 
@@ -52,10 +83,42 @@ abstract class Stmt {
       return visitor.visitExpressionStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitExpressionStmt(this);
+    }
+
     final Expr expression;
   }
+  static class For extends Stmt {
+    For(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+      super(FOR);
+      this.initializer = initializer;
+      this.condition = condition;
+      this.increment = increment;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept (Visitor<R> visitor) {
+      return visitor.visitForStmt(this);
+    }
+
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitForStmt(this);
+    }
+
+    final Stmt initializer;
+    final Expr condition;
+    final Expr increment;
+    final Stmt body;
+    Object[] hoisted = null;
+    boolean counted = false;
+  }
   static class Function extends Stmt {
     Function(Token name, List<Token> params, List<Stmt> body) {
+      super(FUNCTION);
       this.name = name;
       this.params = params;
       this.body = body;
@@ -66,12 +129,20 @@ abstract class Stmt {
       return visitor.visitFunctionStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitFunctionStmt(this);
+    }
+
     final Token name;
     final List<Token> params;
     final List<Stmt> body;
+    Boolean pure = null;
+    LazyBody lazy = null;
   }
   static class If extends Stmt {
     If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+      super(IF);
       this.condition = condition;
       this.thenBranch = thenBranch;
       this.elseBranch = elseBranch;
@@ -82,12 +153,18 @@ abstract class Stmt {
       return visitor.visitIfStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitIfStmt(this);
+    }
+
     final Expr condition;
     final Stmt thenBranch;
     final Stmt elseBranch;
   }
   static class Print extends Stmt {
     Print(Expr expression) {
+      super(PRINT);
       this.expression = expression;
     }
 
@@ -96,10 +173,16 @@ abstract class Stmt {
       return visitor.visitPrintStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitPrintStmt(this);
+    }
+
     final Expr expression;
   }
   static class Return extends Stmt {
     Return(Token keyword, Expr value) {
+      super(RETURN);
       this.keyword = keyword;
       this.value = value;
     }
@@ -109,11 +192,17 @@ abstract class Stmt {
       return visitor.visitReturnStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitReturnStmt(this);
+    }
+
     final Token keyword;
     final Expr value;
   }
   static class Var extends Stmt {
     Var(Token name, Expr initializer) {
+      super(VAR);
       this.name = name;
       this.initializer = initializer;
     }
@@ -123,11 +212,17 @@ abstract class Stmt {
       return visitor.visitVarStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitVarStmt(this);
+    }
+
     final Token name;
     final Expr initializer;
   }
   static class While extends Stmt {
     While(Expr condition, Stmt body) {
+      super(WHILE);
       this.condition = condition;
       this.body = body;
     }
@@ -137,9 +232,16 @@ abstract class Stmt {
       return visitor.visitWhileStmt(this);
     }
 
+    @Override
+    void execute(Interpreter interpreter) {
+      interpreter.visitWhileStmt(this);
+    }
+
     final Expr condition;
     final Stmt body;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
+
+  abstract void execute(Interpreter interpreter);
 }
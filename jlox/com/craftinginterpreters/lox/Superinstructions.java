@@ -0,0 +1,126 @@
+// Superinstructions.java
+// Pass that fuses common node patterns into single combined nodes.
+
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+class Superinstructions extends AstRewriter implements Pass {
+  @Override
+  public String name() {
+    return "superinstructions";
+  }
+
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    return rewrite(statements);
+  }
+
+  /**
+   * Fuse {@code x = x + c} and {@code x = x - c} into an increment.
+   */
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    Expr rewritten = super.visitAssignExpr(expr);
+    if (!(rewritten instanceof Expr.Assign))
+      return rewritten;
+    Expr.Assign assign = (Expr.Assign) rewritten;
+
+    if (!(assign.value instanceof Expr.Binary))
+      return assign;
+    Expr.Binary binary = (Expr.Binary) assign.value;
+    if (binary.operator.type != TokenType.PLUS && binary.operator.type != TokenType.MINUS)
+      return assign;
+    if (!isSameVariable(binary.left, assign) || !isNumber(binary.right))
+      return assign;
+
+    double delta = (double) ((Expr.Literal) binary.right).value;
+    if (binary.operator.type == TokenType.MINUS)
+      delta = -delta;
+
+    Expr.Increment increment = new Expr.Increment(assign.name, binary.operator, delta);
+    increment.depth = assign.depth;
+    return increment;
+  }
+
+  /**
+   * Fuse {@code x < c} (and the other comparisons) into a single compare.
+   */
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr rewritten = super.visitBinaryExpr(expr);
+    if (!(rewritten instanceof Expr.Binary))
+      return rewritten;
+    Expr.Binary binary = (Expr.Binary) rewritten;
+
+    switch (binary.operator.type) {
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        break;
+      default:
+        return binary;
+    }
+    if (!(binary.left instanceof Expr.Variable) || !isNumber(binary.right))
+      return binary;
+
+    Expr.Variable variable = (Expr.Variable) binary.left;
+    Expr.CompareConstant compare = new Expr.CompareConstant(
+        variable.name, binary.operator, (double) ((Expr.Literal) binary.right).value);
+    compare.depth = variable.depth;
+    return compare;
+  }
+
+  /**
+   * Fuse {@code a.b(c)} into a method invocation.
+   */
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    if (!(expr.callee instanceof Expr.Get))
+      return super.visitCallExpr(expr);
+
+    Expr.Get get = (Expr.Get) expr.callee;
+    Expr object = rewrite(get.object);
+    List<Expr> arguments = rewriteAll(expr.arguments);
+    return new Expr.Invoke(object, get.name, expr.paren, arguments);
+  }
+
+  /**
+   * Fuse {@code this.f} into a single field read.
+   */
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    if (!(expr.object instanceof Expr.This))
+      return super.visitGetExpr(expr);
+
+    Expr.This object = (Expr.This) expr.object;
+    Expr.ThisGet get = new Expr.ThisGet(object.keyword, expr.name);
+    get.depth = object.depth;
+    return get;
+  }
+
+  /**
+   * Check if the expression reads the variable the assignment writes to.
+   * 
+   * @param expr
+   * @param assign
+   * @return {@code boolean}
+   */
+  private boolean isSameVariable(Expr expr, Expr.Assign assign) {
+    if (!(expr instanceof Expr.Variable))
+      return false;
+    Expr.Variable variable = (Expr.Variable) expr;
+    return variable.depth == assign.depth && variable.name.lexeme().equals(assign.name.lexeme());
+  }
+
+  /**
+   * Check if the expression is a number literal.
+   * 
+   * @param expr
+   * @return {@code boolean}
+   */
+  private boolean isNumber(Expr expr) {
+    return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double;
+  }
+}
@@ -5,18 +5,71 @@ package com.craftinginterpreters.lox;
 
 class Token {
   final TokenType type;
-  final String lexeme;
   final Object literal;
   final int line;
+  // Span of the token in the source code
+  final int start;
+  final int length;
+  // Text of the token, cut out of the source the first time it is needed
+  private String lexeme;
+  private String source;
 
   Token(TokenType type, String lexeme, Object literal, int line) {
+    this(type, lexeme, 0, literal, line);
+  }
+
+  /**
+   * Initialize a token whose text is already known, at a position in the
+   * source code.
+   * 
+   * @param type
+   * @param lexeme
+   * @param start
+   * @param literal
+   * @param line
+   */
+  Token(TokenType type, String lexeme, int start, Object literal, int line) {
     this.type = type;
     this.lexeme = lexeme;
+    this.start = start;
+    this.length = lexeme.length();
     this.literal = literal;
     this.line = line;
   }
 
+  /**
+   * Initialize a token spanning part of the source code, without copying
+   * its text.
+   * 
+   * @param type
+   * @param source
+   * @param start
+   * @param length
+   * @param literal
+   * @param line
+   */
+  Token(TokenType type, String source, int start, int length, Object literal, int line) {
+    this.type = type;
+    this.source = source;
+    this.start = start;
+    this.length = length;
+    this.literal = literal;
+    this.line = line;
+  }
+
+  /**
+   * Get the text of the token.
+   * 
+   * @return {@code String}
+   */
+  String lexeme() {
+    if (lexeme == null) {
+      lexeme = source.substring(start, start + length);
+    }
+    return lexeme;
+  }
+
   public String toString() {
-    return type + " " + lexeme + " " + literal;
+    return type + " " + lexeme() + " " + literal;
   }
 }
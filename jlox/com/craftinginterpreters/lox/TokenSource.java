@@ -0,0 +1,14 @@
+// TokenSource.java
+// Interface for a scanner handing out tokens one at a time.
+
+package com.craftinginterpreters.lox;
+
+interface TokenSource {
+  /**
+   * Scan the next token.
+   * Once the source is exhausted, every call returns an end of file token.
+   * 
+   * @return {@code Token}
+   */
+  Token nextToken();
+}
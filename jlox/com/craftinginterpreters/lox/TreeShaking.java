@@ -0,0 +1,287 @@
+// TreeShaking.java
+// Pass that drops the top level functions, classes and methods never used.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+class TreeShaking implements Pass {
+  // Names read from the code found reachable so far
+  private final References references = new References();
+  // Reachable declarations and methods
+  private final Set<Stmt> live = Collections.newSetFromMap(new IdentityHashMap<>());
+  // Names of the classes used as a superclass
+  private final Set<String> superclasses = new HashSet<>();
+
+  @Override
+  public String name() {
+    return "tree-shaking";
+  }
+
+  /**
+   * Remove the unreachable top level declarations.
+   * Everything but function and class declarations is reachable. A
+   * declaration is reachable once its name is used from reachable code,
+   * and a method once a property with its name is, until nothing new is
+   * found. Classes with subclasses keep all of their methods, and
+   * subclasses are always reachable.
+   */
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      if (!isDeclaration(statement))
+        references.scan(statement);
+    }
+
+    boolean changed;
+    do {
+      changed = false;
+      for (Stmt statement : statements) {
+        if (isDeclaration(statement))
+          changed |= mark(statement);
+      }
+    } while (changed);
+
+    List<Stmt> result = new ArrayList<>();
+    for (Stmt statement : statements) {
+      if (!isDeclaration(statement)) {
+        result.add(statement);
+      } else if (!live.contains(statement)) {
+        report(statement);
+      } else if (statement instanceof Stmt.Class) {
+        result.add(shake((Stmt.Class) statement));
+      } else {
+        result.add(statement);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Check if a statement declares a function or a class.
+   * 
+   * @param stmt
+   * @return {@code boolean}
+   */
+  private static boolean isDeclaration(Stmt stmt) {
+    return stmt instanceof Stmt.Function || stmt instanceof Stmt.Class;
+  }
+
+  /**
+   * Check if a statement declares a subclass. Evaluating the superclass
+   * fails at runtime if it isn't a class, so a subclass is always kept.
+   * 
+   * @param stmt
+   * @return {@code boolean}
+   */
+  private static boolean hasSuperclass(Stmt stmt) {
+    return stmt instanceof Stmt.Class && ((Stmt.Class) stmt).superclass != null;
+  }
+
+  /**
+   * Mark a declaration and its methods that became reachable.
+   * 
+   * @param stmt
+   * @return {@code true} if anything new was marked
+   */
+  private boolean mark(Stmt stmt) {
+    boolean changed = false;
+    if (!live.contains(stmt)) {
+      Token name = stmt instanceof Stmt.Function ? ((Stmt.Function) stmt).name : ((Stmt.Class) stmt).name;
+      if (!references.globals.contains(name.lexeme()) && !hasSuperclass(stmt))
+        return false;
+
+      live.add(stmt);
+      changed = true;
+      if (stmt instanceof Stmt.Function) {
+        references.scan(stmt);
+      } else if (((Stmt.Class) stmt).superclass != null) {
+        Expr.Variable superclass = ((Stmt.Class) stmt).superclass;
+        references.scan(superclass);
+        superclasses.add(superclass.name.lexeme());
+      }
+    }
+
+    if (stmt instanceof Stmt.Class) {
+      Stmt.Class klass = (Stmt.Class) stmt;
+      for (Stmt.Function method : klass.methods) {
+        if (!live.contains(method) && isUsed(klass, method)) {
+          live.add(method);
+          references.scan(method);
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Check if a method of a reachable class may be called.
+   * 
+   * @param klass
+   * @param method
+   * @return {@code boolean}
+   */
+  private boolean isUsed(Stmt.Class klass, Stmt.Function method) {
+    return method.name.lexeme().equals("init")
+        || superclasses.contains(klass.name.lexeme())
+        || references.properties.contains(method.name.lexeme());
+  }
+
+  /**
+   * Drop the unused methods of a class.
+   * 
+   * @param klass
+   * @return
+   */
+  private Stmt.Class shake(Stmt.Class klass) {
+    List<Stmt.Function> methods = new ArrayList<>();
+    for (Stmt.Function method : klass.methods) {
+      if (live.contains(method)) {
+        methods.add(method);
+      } else if (Lox.dumpRemoved) {
+        System.err.println("[line " + method.name.line + "] removed method "
+            + klass.name.lexeme() + "." + method.name.lexeme());
+      }
+    }
+
+    if (methods.size() == klass.methods.size())
+      return klass;
+    return new Stmt.Class(klass.name, klass.superclass, methods);
+  }
+
+  /**
+   * Print a removed declaration.
+   * 
+   * @param stmt
+   */
+  private void report(Stmt stmt) {
+    if (!Lox.dumpRemoved)
+      return;
+    if (stmt instanceof Stmt.Function) {
+      Token name = ((Stmt.Function) stmt).name;
+      System.err.println("[line " + name.line + "] removed function " + name.lexeme());
+    } else {
+      Token name = ((Stmt.Class) stmt).name;
+      System.err.println("[line " + name.line + "] removed class " + name.lexeme());
+    }
+  }
+
+  /**
+   * Collects the global variables and the properties used by code.
+   */
+  private static class References extends AstRewriter {
+    final Set<String> globals = new HashSet<>();
+    final Set<String> properties = new HashSet<>();
+
+    /**
+     * Scan a statement.
+     * 
+     * @param stmt
+     */
+    void scan(Stmt stmt) {
+      rewrite(stmt);
+    }
+
+    /**
+     * Scan an expression.
+     * 
+     * @param expr
+     */
+    void scan(Expr expr) {
+      rewrite(expr);
+    }
+
+    /**
+     * Add the name of a variable if it is global.
+     * 
+     * @param name
+     * @param depth
+     */
+    private void global(Token name, int depth) {
+      if (depth == -1)
+        globals.add(name.lexeme());
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+      // Local classes are kept whole
+      if (stmt.superclass != null)
+        rewrite(stmt.superclass);
+      return super.visitClassStmt(stmt);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+      // Any name in a body that is not parsed yet may be used
+      if (stmt.lazy != null) {
+        for (Token token : stmt.lazy.tokens) {
+          if (token.type == TokenType.IDENTIFIER) {
+            globals.add(token.lexeme());
+            properties.add(token.lexeme());
+          }
+        }
+      }
+      return super.visitFunctionStmt(stmt);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+      global(expr.name, expr.depth);
+      return super.visitAssignExpr(expr);
+    }
+
+    @Override
+    public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+      global(expr.name, expr.depth);
+      return expr;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+      properties.add(expr.name.lexeme());
+      return super.visitGetExpr(expr);
+    }
+
+    @Override
+    public Expr visitHoistedExpr(Expr.Hoisted expr) {
+      rewrite(expr.expression);
+      return expr;
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+      global(expr.name, expr.depth);
+      return expr;
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Expr.Invoke expr) {
+      properties.add(expr.name.lexeme());
+      return super.visitInvokeExpr(expr);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+      properties.add(expr.method.lexeme());
+      return expr;
+    }
+
+    @Override
+    public Expr visitThisGetExpr(Expr.ThisGet expr) {
+      properties.add(expr.name.lexeme());
+      return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+      global(expr.name, expr.depth);
+      return expr;
+    }
+  }
+}
@@ -0,0 +1,467 @@
+// TypeInference.java
+// Pass that proves which operators only ever see numbers or strings.
+
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+class TypeInference implements Pass, Expr.Visitor<Integer>, Stmt.Visitor<Void> {
+  // Types are sets of bits so joining two types is an "or".
+  // NONE means no value reaches the expression yet.
+  static final int NONE = 0;
+  static final int NUMBER = 1;
+  static final int STRING = 2;
+  static final int OTHER = 4;
+  static final int ANY = NUMBER | STRING | OTHER;
+
+  // Local variables visible from each scope, by their declaring token.
+  // "this" and "super" map to null.
+  private final Stack<Map<String, Token>> scopes = new Stack<>();
+  // Join of every value stored in each local variable
+  private final Map<Token, Integer> locals = new IdentityHashMap<>();
+  private boolean changed;
+  // Declarations and annotated operators, in source order, for the dump
+  private List<Token> declared;
+  private List<Expr> annotated;
+
+  @Override
+  public String name() {
+    return "types";
+  }
+
+  /**
+   * Infer the types of the program and record them in its operators.
+   * Local variables start with no type and only grow, so walking the
+   * program again until no local changes gives types that hold for every
+   * assignment, including those made later or from closures.
+   */
+  @Override
+  public List<Stmt> run(List<Stmt> statements) {
+    do {
+      changed = false;
+      declared = new ArrayList<>();
+      annotated = new ArrayList<>();
+      walk(statements);
+    } while (changed);
+
+    if (Lox.dumpTypes)
+      dump();
+    return statements;
+  }
+
+  /**
+   * Print the inferred types of the local variables and operators.
+   */
+  private void dump() {
+    for (Token name : declared) {
+      System.err.println("[line " + name.line + "] var " + name.lexeme() + ": " + describe(locals.get(name)));
+    }
+    for (Expr expr : annotated) {
+      if (expr instanceof Expr.Binary) {
+        Expr.Binary binary = (Expr.Binary) expr;
+        System.err.println("[line " + binary.operator.line + "] operator " + binary.operator.lexeme()
+            + ": " + describe(binary.operands));
+      } else {
+        Expr.Unary unary = (Expr.Unary) expr;
+        System.err.println("[line " + unary.operator.line + "] operator " + unary.operator.lexeme()
+            + ": " + describe(unary.operands));
+      }
+    }
+  }
+
+  /**
+   * Name a type.
+   * 
+   * @param type
+   * @return
+   */
+  static String describe(int type) {
+    switch (type) {
+      case NONE:
+        return "none";
+      case ANY:
+        return "any";
+      default:
+        List<String> names = new ArrayList<>();
+        if ((type & NUMBER) != 0)
+          names.add("number");
+        if ((type & STRING) != 0)
+          names.add("string");
+        if ((type & OTHER) != 0)
+          names.add("other");
+        return String.join("|", names);
+    }
+  }
+
+  /**
+   * Walk each statement in a list.
+   * 
+   * @param statements
+   */
+  private void walk(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      walk(statement);
+    }
+  }
+
+  /**
+   * Walk a statement.
+   * 
+   * @param stmt
+   */
+  private void walk(Stmt stmt) {
+    if (stmt != null)
+      stmt.accept(this);
+  }
+
+  /**
+   * Infer the type of an expression.
+   * 
+   * @param expr
+   * @return
+   */
+  private int infer(Expr expr) {
+    return expr.accept(this);
+  }
+
+  /**
+   * Walk a function body in the scope of its parameters.
+   * 
+   * @param function
+   */
+  private void walkFunction(Stmt.Function function) {
+    scopes.push(new HashMap<>());
+    for (Token param : function.params) {
+      declare(param, ANY);
+    }
+    walk(function.body);
+    scopes.pop();
+  }
+
+  /**
+   * Declare a local variable holding a value of the given type.
+   * Globals can be assigned from anywhere, even other REPL lines, so they
+   * are not tracked.
+   * 
+   * @param name
+   * @param type
+   */
+  private void declare(Token name, int type) {
+    if (scopes.isEmpty())
+      return;
+    scopes.peek().put(name.lexeme(), name);
+    declared.add(name);
+    store(name, type);
+  }
+
+  /**
+   * Get the declaration of a resolved variable.
+   * 
+   * @param name
+   * @param depth
+   * @return the declaring token, or {@code null} if not tracked
+   */
+  private Token lookUp(Token name, int depth) {
+    if (depth < 0 || depth >= scopes.size())
+      return null;
+    return scopes.get(scopes.size() - 1 - depth).get(name.lexeme());
+  }
+
+  /**
+   * Join the type of a value stored into a variable.
+   * 
+   * @param name  name of the variable
+   * @param depth resolved depth of the variable
+   * @param type
+   */
+  private void assign(Token name, int depth, int type) {
+    Token declaration = lookUp(name, depth);
+    if (declaration != null)
+      store(declaration, type);
+  }
+
+  /**
+   * Join a type into a local variable.
+   * 
+   * @param declaration
+   * @param type
+   */
+  private void store(Token declaration, int type) {
+    int previous = locals.getOrDefault(declaration, NONE);
+    if ((previous | type) != previous) {
+      locals.put(declaration, previous | type);
+      changed = true;
+    }
+  }
+
+  /**
+   * Get the type of a variable.
+   * 
+   * @param name
+   * @param depth
+   * @return
+   */
+  private int load(Token name, int depth) {
+    Token declaration = lookUp(name, depth);
+    if (declaration == null)
+      return ANY;
+    return locals.getOrDefault(declaration, NONE);
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    scopes.push(new HashMap<>());
+    walk(stmt.statements);
+    scopes.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    declare(stmt.name, OTHER);
+    if (stmt.superclass != null) {
+      infer(stmt.superclass);
+      scopes.push(new HashMap<>());
+      scopes.peek().put("super", null);
+    }
+
+    scopes.push(new HashMap<>());
+    scopes.peek().put("this", null);
+    for (Stmt.Function method : stmt.methods) {
+      walkFunction(method);
+    }
+    scopes.pop();
+
+    if (stmt.superclass != null)
+      scopes.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    infer(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    if (stmt.initializer != null) {
+      scopes.push(new HashMap<>());
+      walk(stmt.initializer);
+    }
+    if (stmt.condition != null)
+      infer(stmt.condition);
+    walk(stmt.body);
+    if (stmt.increment != null)
+      infer(stmt.increment);
+    if (stmt.initializer != null)
+      scopes.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    declare(stmt.name, OTHER);
+    walkFunction(stmt);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    infer(stmt.condition);
+    walk(stmt.thenBranch);
+    walk(stmt.elseBranch);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    infer(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value != null)
+      infer(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    // A variable without initializer holds nil
+    int type = stmt.initializer == null ? OTHER : infer(stmt.initializer);
+    declare(stmt.name, type);
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    infer(stmt.condition);
+    walk(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Integer visitAssignExpr(Expr.Assign expr) {
+    int type = infer(expr.value);
+    assign(expr.name, expr.depth, type);
+    return type;
+  }
+
+  @Override
+  public Integer visitBinaryExpr(Expr.Binary expr) {
+    int left = infer(expr.left);
+    int right = infer(expr.right);
+
+    expr.operands = NONE;
+    switch (expr.operator.type) {
+      case BANG_EQUAL:
+      case EQUAL_EQUAL:
+        return OTHER;
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        if (left == NUMBER && right == NUMBER)
+          expr.operands = NUMBER;
+        break;
+      case PLUS:
+        if (left == NUMBER && right == NUMBER)
+          expr.operands = NUMBER;
+        if (left == STRING && right == STRING)
+          expr.operands = STRING;
+        break;
+      default:
+        if (left == NUMBER && right == NUMBER)
+          expr.operands = NUMBER;
+        break;
+    }
+    if (expr.operands != NONE)
+      annotated.add(expr);
+
+    switch (expr.operator.type) {
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return OTHER;
+      case PLUS:
+        // Either both numbers or both strings, or it fails
+        return left & right & (NUMBER | STRING);
+      default:
+        return NUMBER;
+    }
+  }
+
+  @Override
+  public Integer visitCallExpr(Expr.Call expr) {
+    infer(expr.callee);
+    for (Expr argument : expr.arguments) {
+      infer(argument);
+    }
+    return ANY;
+  }
+
+  @Override
+  public Integer visitCompareConstantExpr(Expr.CompareConstant expr) {
+    return OTHER;
+  }
+
+  @Override
+  public Integer visitGetExpr(Expr.Get expr) {
+    infer(expr.object);
+    return ANY;
+  }
+
+  @Override
+  public Integer visitGroupingExpr(Expr.Grouping expr) {
+    return infer(expr.expression);
+  }
+
+  @Override
+  public Integer visitHoistedExpr(Expr.Hoisted expr) {
+    return infer(expr.expression);
+  }
+
+  @Override
+  public Integer visitIncrementExpr(Expr.Increment expr) {
+    assign(expr.name, expr.depth, NUMBER);
+    return NUMBER;
+  }
+
+  @Override
+  public Integer visitInlineArgumentExpr(Expr.InlineArgument expr) {
+    return ANY;
+  }
+
+  @Override
+  public Integer visitInvokeExpr(Expr.Invoke expr) {
+    infer(expr.object);
+    for (Expr argument : expr.arguments) {
+      infer(argument);
+    }
+    return ANY;
+  }
+
+  @Override
+  public Integer visitLiteralExpr(Expr.Literal expr) {
+    if (expr.value instanceof Double)
+      return NUMBER;
+    if (expr.value instanceof String)
+      return STRING;
+    return OTHER;
+  }
+
+  @Override
+  public Integer visitLogicalExpr(Expr.Logical expr) {
+    // The result is one of the operands
+    return infer(expr.left) | infer(expr.right);
+  }
+
+  @Override
+  public Integer visitSetExpr(Expr.Set expr) {
+    infer(expr.object);
+    return infer(expr.value);
+  }
+
+  @Override
+  public Integer visitSuperExpr(Expr.Super expr) {
+    return ANY;
+  }
+
+  @Override
+  public Integer visitThisExpr(Expr.This expr) {
+    return OTHER;
+  }
+
+  @Override
+  public Integer visitThisGetExpr(Expr.ThisGet expr) {
+    return ANY;
+  }
+
+  @Override
+  public Integer visitUnaryExpr(Expr.Unary expr) {
+    int right = infer(expr.right);
+
+    expr.operands = NONE;
+    if (expr.operator.type == TokenType.BANG)
+      return OTHER;
+
+    if (right == NUMBER) {
+      expr.operands = NUMBER;
+      annotated.add(expr);
+    }
+    return NUMBER;
+  }
+
+  @Override
+  public Integer visitVariableExpr(Expr.Variable expr) {
+    return load(expr.name, expr.depth);
+  }
+}
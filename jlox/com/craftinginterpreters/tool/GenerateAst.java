@@ -5,6 +5,7 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -22,31 +23,46 @@ public class GenerateAst {
     }
     String outputDir = args[0];
     // Expression types
-    defineAst(outputDir, "Expr", Arrays.asList(
-        "Assign: Token name, Expr value",
-        "Binary: Expr left, Token operator, Expr right",
-        "Call: Expr callee, Token paren, List<Expr> arguments",
+    // Fields after "|" are mutable slots used to cache runtime data.
+    List<String> exprTypes = Arrays.asList(
+        "Assign: Token name, Expr value | int depth = -1",
+        "Binary: Expr left, Token operator, Expr right | int seen = 0, int operands = 0",
+        "Call: Expr callee, Token paren, List<Expr> arguments | CallSite site = new CallSite()",
+        "CompareConstant: Token name, Token operator, double constant | int depth = -1",
         "Get: Expr object, Token name",
         "Grouping: Expr expression",
+        "Hoisted: Expr expression, int index | Object[] values = null",
+        "Increment: Token name, Token operator, double delta | int depth = -1",
+        "InlineArgument: Token name, int index",
+        "Invoke: Expr object, Token name, Token paren, List<Expr> arguments | CallSite site = new CallSite()",
         "Literal: Object value",
         "Logical: Expr left, Token operator, Expr right",
         "Set: Expr object, Token name, Expr value",
-        "Super: Token keyword, Token method",
-        "This: Token keyword",
-        "Unary: Token operator, Expr right",
-        "Variable: Token name"));
+        "Super: Token keyword, Token method | int depth = -1",
+        "This: Token keyword | int depth = -1",
+        "ThisGet: Token keyword, Token name | int depth = -1",
+        "Unary: Token operator, Expr right | int operands = 0",
+        "Variable: Token name | int depth = -1");
+    defineAst(outputDir, "Expr", "Object evaluate", exprTypes);
 
     // Statement types
-    defineAst(outputDir, "Stmt", Arrays.asList(
+    List<String> stmtTypes = Arrays.asList(
         "Block: List<Stmt> statements",
         "Class: Token name, Expr.Variable superclass, List<Stmt.Function> methods",
         "Expression: Expr expression",
-        "Function: Token name, List<Token> params, List<Stmt> body",
+        "For: Stmt initializer, Expr condition, Expr increment, Stmt body"
+            + " | Object[] hoisted = null, boolean counted = false",
+        "Function: Token name, List<Token> params, List<Stmt> body"
+            + " | Boolean pure = null, LazyBody lazy = null",
         "If: Expr condition, Stmt thenBranch, Stmt elseBranch",
         "Print: Expr expression",
         "Return: Token keyword, Expr value",
         "Var: Token name, Expr initializer",
-        "While: Expr condition, Stmt body"));
+        "While: Expr condition, Stmt body");
+    defineAst(outputDir, "Stmt", "void execute", stmtTypes);
+
+    // Encoding of both trees in the arrays of a CompactProgram
+    defineCompact(outputDir, exprTypes, stmtTypes);
   }
 
   /**
@@ -54,11 +70,13 @@ public class GenerateAst {
    * 
    * @param outputDir output directory path
    * @param baseName  name of base class
+   * @param executor  return type and name of the method dispatching directly
+   *                  to the interpreter, or {@code null} for none
    * @param types     name and fields of all subclasses
    * @throws IOException
    */
   private static void defineAst(
-      String outputDir, String baseName, List<String> types) throws IOException {
+      String outputDir, String baseName, String executor, List<String> types) throws IOException {
     String path = outputDir + "/" + baseName + ".java";
     PrintWriter writer = new PrintWriter(path, "UTF-8");
 
@@ -68,23 +86,66 @@ public class GenerateAst {
     writer.println();
     writer.println("abstract class " + baseName + " {");
 
+    defineKinds(writer, baseName, types);
     defineVisitor(writer, baseName, types);
 
     // The AST classes.
     for (String type : types) {
       String className = type.split(":")[0].trim();
-      String fields = type.split(":")[1].trim();
-      defineType(writer, baseName, className, fields);
+      String[] fields = type.split(":")[1].split("\\|");
+      String slots = fields.length > 1 ? fields[1].trim() : null;
+      defineType(writer, baseName, className, fields[0].trim(), slots, executor);
     }
 
     // The base accept() method.
     writer.println();
     writer.println("  abstract <R> R accept(Visitor<R> visitor);");
 
+    // The base method for direct dispatch.
+    if (executor != null) {
+      writer.println();
+      writer.println("  abstract " + executor + "(Interpreter interpreter);");
+    }
+
     writer.println("}");
     writer.close();
   }
 
+  /**
+   * Define an integer kind tag for each subclass and the field holding it.
+   * Lets passes and the interpreter {@code switch} on the node type.
+   * 
+   * @param writer   writer to the current file
+   * @param baseName name of base class
+   * @param types    list of names and fields of all subclasses
+   */
+  private static void defineKinds(
+      PrintWriter writer, String baseName, List<String> types) {
+    for (int i = 0; i < types.size(); i++) {
+      String typeName = types.get(i).split(":")[0].trim();
+      writer.println("  static final int " + kindName(typeName) + " = " + i + ";");
+    }
+
+    writer.println();
+    writer.println("  final int kind;");
+    writer.println();
+    writer.println("  " + baseName + "(int kind) {");
+    writer.println("    this.kind = kind;");
+    writer.println("  }");
+    writer.println();
+  }
+
+  /**
+   * Convert a subclass name to the name of its kind constant.
+   * For example, {@code ThisGet} becomes {@code THIS_GET}.
+   * 
+   * @param typeName name of subclass
+   * @return
+   */
+  private static String kindName(String typeName) {
+    return typeName.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+  }
+
   /**
    * Define the {@code Visitor} interface and all methods for each subclass.
    * 
@@ -111,13 +172,18 @@ public class GenerateAst {
    * @param baseName  name of base class
    * @param className name of subclass
    * @param fieldList list of fields of the subclass
+   * @param slotList  list of mutable runtime slots, or {@code null} for none
+   * @param executor  method dispatching directly to the interpreter, or
+   *                  {@code null} for none
    */
   private static void defineType(
-      PrintWriter writer, String baseName, String className, String fieldList) {
+      PrintWriter writer, String baseName, String className, String fieldList,
+      String slotList, String executor) {
     writer.println("  static class " + className + " extends " + baseName + " {");
 
     // Constructor.
     writer.println("    " + className + "(" + fieldList + ") {");
+    writer.println("      super(" + kindName(className) + ");");
 
     // Store parameters in fields.
     String[] fields = fieldList.split(", ");
@@ -135,12 +201,308 @@ public class GenerateAst {
     writer.println("      return visitor.visit" + className + baseName + "(this);");
     writer.println("    }");
 
+    // Direct dispatch, skipping the Visitor interface.
+    if (executor != null) {
+      String call = "interpreter.visit" + className + baseName + "(this);";
+      writer.println();
+      writer.println("    @Override");
+      writer.println("    " + executor + "(Interpreter interpreter) {");
+      writer.println("      " + (executor.startsWith("void ") ? "" : "return ") + call);
+      writer.println("    }");
+    }
+
     // Fields.
     writer.println();
     for (String field : fields) {
       writer.println("    final " + field + ";");
     }
 
+    // Runtime slots.
+    if (slotList != null) {
+      for (String slot : slotList.split(", ")) {
+        writer.println("    " + slot + ";");
+      }
+    }
+
     writer.println("  }");
   }
+
+  /**
+   * Define the encoding of the syntax trees into a {@code CompactProgram}.
+   * Each node is written after its children as its kind followed by its
+   * fields: child nodes as their position, lists as a count and the
+   * positions, tokens as a symbol and a line, values through the constant
+   * pool. The runtime slots that are plain data are kept too, the caches
+   * filled at runtime start over empty.
+   * 
+   * @param outputDir output directory path
+   * @param exprTypes name and fields of the expression subclasses
+   * @param stmtTypes name and fields of the statement subclasses
+   * @throws IOException
+   */
+  private static void defineCompact(
+      String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+    PrintWriter writer = new PrintWriter(outputDir + "/CompactAst.java", "UTF-8");
+
+    writer.println("package com.craftinginterpreters.lox;");
+    writer.println();
+    writer.println("import java.util.ArrayList;");
+    writer.println("import java.util.List;");
+    writer.println();
+    writer.println("class CompactAst {");
+    writer.println("  private CompactAst() {");
+    writer.println("  }");
+
+    defineEncoder(writer, "Expr", exprTypes);
+    defineEncoder(writer, "Stmt", stmtTypes);
+    defineDecoder(writer, "Expr", exprTypes);
+    defineDecoder(writer, "Stmt", stmtTypes);
+
+    writer.println("}");
+    writer.close();
+  }
+
+  /**
+   * Define the method encoding the nodes of one tree.
+   * 
+   * @param writer   writer to the current file
+   * @param baseName name of base class
+   * @param types    list of names and fields of all subclasses
+   */
+  private static void defineEncoder(PrintWriter writer, String baseName, List<String> types) {
+    String variable = baseName.toLowerCase();
+    writer.println();
+    writer.println("  static int encode(CompactProgram out, " + baseName + " " + variable + ") {");
+    writer.println("    if (" + variable + " == null)");
+    writer.println("      return -1;");
+    writer.println("    switch (" + variable + ".kind) {");
+
+    for (String type : types) {
+      String className = type.split(":")[0].trim();
+      List<String[]> fields = compactFields(type);
+      writer.println("      case " + baseName + "." + kindName(className) + ": {");
+      writer.println("        " + baseName + "." + className + " node = (" + baseName + "." + className + ") "
+          + variable + ";");
+
+      // Children first, so the node can point back at them
+      for (String[] field : fields) {
+        String encoding = encoding(field[0]);
+        if (encoding.equals("node")) {
+          writer.println("        int " + field[1] + " = encode(out, node." + field[1] + ");");
+        } else if (encoding.equals("nodes")) {
+          writer.println("        int[] " + field[1] + " = new int[node." + field[1] + ".size()];");
+          writer.println("        for (int i = 0; i < " + field[1] + ".length; i++)");
+          writer.println("          " + field[1] + "[i] = encode(out, node." + field[1] + ".get(i));");
+        }
+      }
+
+      writer.println("        int position = out.begin(" + baseName + "." + kindName(className) + ");");
+      for (String[] field : fields) {
+        switch (encoding(field[0])) {
+          case "node":
+          case "nodes":
+            writer.println("        out.add(" + field[1] + ");");
+            break;
+          case "boolean":
+            writer.println("        out.add(node." + field[1] + " ? 1 : 0);");
+            break;
+          case "skip":
+            break;
+          default:
+            writer.println("        out.add(node." + field[1] + ");");
+            break;
+        }
+      }
+      writer.println("        return position;");
+      writer.println("      }");
+    }
+
+    writer.println("      default:");
+    writer.println("        throw new IllegalArgumentException(\"Unknown " + variable + " kind.\");");
+    writer.println("    }");
+    writer.println("  }");
+  }
+
+  /**
+   * Define the method decoding the nodes of one tree.
+   * The body of a function is left encoded until the function is first
+   * called.
+   * 
+   * @param writer   writer to the current file
+   * @param baseName name of base class
+   * @param types    list of names and fields of all subclasses
+   */
+  private static void defineDecoder(PrintWriter writer, String baseName, List<String> types) {
+    writer.println();
+    writer.println("  static " + baseName + " decode" + baseName + "(CompactProgram.Decoder in, int position) {");
+    writer.println("    if (position < 0)");
+    writer.println("      return null;");
+    writer.println("    switch (in.seek(position)) {");
+
+    for (String type : types) {
+      String className = type.split(":")[0].trim();
+      String qualified = baseName + "." + className;
+      writer.println("      case " + baseName + "." + kindName(className) + ": {");
+
+      // Read the whole record before decoding the children elsewhere
+      List<String[]> fields = compactFields(type);
+      for (String[] field : fields) {
+        String name = field[1];
+        switch (encoding(field[0])) {
+          case "node":
+            writer.println("        int " + name + " = in.read();");
+            break;
+          case "nodes":
+            if (isDeferred(className, name)) {
+              writer.println("        int " + name + " = in.skipList();");
+            } else {
+              writer.println("        int[] " + name + " = in.readList();");
+            }
+            break;
+          case "tokens":
+            writer.println("        List<Token> " + name + " = in.readTokens();");
+            break;
+          case "token":
+            writer.println("        Token " + name + " = in.readToken();");
+            break;
+          case "constant":
+            String cast = field[0].equals("Object") ? "" : "(" + boxed(field[0]) + ") ";
+            writer.println("        " + boxed(field[0]) + " " + name + " = " + cast + "in.readConstant();");
+            break;
+          case "int":
+            writer.println("        int " + name + " = in.read();");
+            break;
+          case "boolean":
+            writer.println("        boolean " + name + " = in.read() != 0;");
+            break;
+          case "array":
+            writer.println("        Object[] " + name + " = in.readArray();");
+            break;
+          default:
+            break;
+        }
+      }
+
+      StringBuilder arguments = new StringBuilder();
+      for (String[] field : fields) {
+        if (field[2] != null)
+          continue;
+        if (arguments.length() > 0)
+          arguments.append(", ");
+        String name = field[1];
+        if (encoding(field[0]).equals("node")) {
+          // Subclasses are read back as their base class
+          String cast = field[0].contains(".") ? "(" + field[0] + ") " : "";
+          arguments.append(cast + "decode" + field[0].split("\\.")[0] + "(in, " + name + ")");
+        } else if (encoding(field[0]).equals("nodes")) {
+          String element = field[0].substring("List<".length(), field[0].length() - 1);
+          if (isDeferred(className, name)) {
+            arguments.append("new ArrayList<>()");
+          } else {
+            writer.println("        List<" + element + "> " + name + "Nodes = new ArrayList<>(" + name + ".length);");
+            writer.println("        for (int child : " + name + ")");
+            String cast = element.contains(".") ? "(" + element + ") " : "";
+            writer.println("          " + name + "Nodes.add(" + cast + "decode" + element.split("\\.")[0]
+                + "(in, child));");
+            arguments.append(name + "Nodes");
+          }
+        } else {
+          arguments.append(name);
+        }
+      }
+
+      writer.println("        " + qualified + " node = new " + qualified + "(" + arguments + ");");
+      for (String[] field : fields) {
+        if (field[2] != null && !encoding(field[0]).equals("skip"))
+          writer.println("        node." + field[1] + " = " + field[1] + ";");
+        if (isDeferred(className, field[1]))
+          writer.println("        node.lazy = new LazyBody(in.program, " + field[1] + ");");
+      }
+      writer.println("        return node;");
+      writer.println("      }");
+    }
+
+    writer.println("      default:");
+    writer.println("        throw new IllegalArgumentException(\"Unknown " + baseName.toLowerCase() + " kind.\");");
+    writer.println("    }");
+    writer.println("  }");
+  }
+
+  /**
+   * Split the fields and slots of a subclass.
+   * 
+   * @param type name and fields of the subclass
+   * @return type, name and, for a slot, its initial value of each field
+   */
+  private static List<String[]> compactFields(String type) {
+    List<String[]> fields = new ArrayList<>();
+    String[] parts = type.split(":")[1].split("\\|");
+    for (String field : parts[0].trim().split(", ")) {
+      String[] words = field.split(" ");
+      fields.add(new String[] { words[0], words[1], null });
+    }
+    if (parts.length > 1) {
+      for (String slot : parts[1].trim().split(", ")) {
+        String[] words = slot.split(" ");
+        fields.add(new String[] { words[0], words[1], words[3] });
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Get how a field of a given type is encoded.
+   * 
+   * @param type Java type of the field
+   * @return {@code String}
+   */
+  private static String encoding(String type) {
+    switch (type) {
+      case "Expr":
+      case "Stmt":
+      case "Expr.Variable":
+        return "node";
+      case "List<Expr>":
+      case "List<Stmt>":
+      case "List<Stmt.Function>":
+        return "nodes";
+      case "List<Token>":
+        return "tokens";
+      case "Token":
+        return "token";
+      case "Object":
+      case "double":
+        return "constant";
+      case "int":
+        return "int";
+      case "boolean":
+        return "boolean";
+      case "Object[]":
+        return "array";
+      default:
+        // Caches rebuilt at runtime
+        return "skip";
+    }
+  }
+
+  /**
+   * Get the type a constant is cast to when it's read back.
+   * 
+   * @param type Java type of the field
+   * @return {@code String}
+   */
+  private static String boxed(String type) {
+    return type.equals("double") ? "Double" : type;
+  }
+
+  /**
+   * Check if a field is only decoded when it's first needed.
+   * 
+   * @param className name of subclass
+   * @param name      name of the field
+   * @return {@code boolean}
+   */
+  private static boolean isDeferred(String className, String name) {
+    return className.equals("Function") && name.equals("body");
+  }
 }